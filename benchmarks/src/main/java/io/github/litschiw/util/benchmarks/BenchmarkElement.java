@@ -0,0 +1,12 @@
+package io.github.litschiw.util.benchmarks;
+
+import io.github.litschiw.util.Bucketable;
+
+import java.util.Comparator;
+
+// the id keeps elements with equal priorities distinct for hash and tree based collections
+public record BenchmarkElement(double priority, long id) implements Bucketable {
+
+    public static final Comparator<BenchmarkElement> COMPARATOR =
+            Comparator.comparingDouble(BenchmarkElement::priority).thenComparingLong(BenchmarkElement::id);
+}
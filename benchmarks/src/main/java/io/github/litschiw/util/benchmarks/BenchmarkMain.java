@@ -0,0 +1,26 @@
+package io.github.litschiw.util.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Runs the JMH benchmarks and writes the results as JMH JSON (jmh-result.json) unless another result format is
+ * requested. All regular JMH options are supported, e.g.
+ * {@code java -jar target/benchmarks.jar PollBenchmark -p queueType=HEAD_SORTED,PRIORITY_QUEUE -rff poll.json}.
+ * Queue types that do not use the bucket size fail their setup for every bucket size but 1, so that they are not
+ * measured once per bucket size.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (!Arrays.asList(args).contains("-rf")) {
+            String[] withJson = Arrays.copyOf(args, args.length + 2);
+            withJson[args.length] = "-rf";
+            withJson[args.length + 1] = "json";
+            args = withJson;
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+}
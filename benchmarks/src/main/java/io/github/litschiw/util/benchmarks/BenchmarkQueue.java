@@ -0,0 +1,22 @@
+package io.github.litschiw.util.benchmarks;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// common surface over the compared collections, not all of them are java.util.Queues
+public interface BenchmarkQueue {
+
+    void offer(BenchmarkElement element);
+
+    BenchmarkElement poll();
+
+    boolean remove(BenchmarkElement element);
+
+    boolean contains(BenchmarkElement element);
+
+    Iterator<BenchmarkElement> iterator();
+
+    Stream<BenchmarkElement> parallelStream();
+
+    int size();
+}
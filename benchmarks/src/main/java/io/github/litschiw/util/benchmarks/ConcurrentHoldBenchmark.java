@@ -0,0 +1,88 @@
+package io.github.litschiw.util.benchmarks;
+
+import io.github.litschiw.util.ConcurrentHeadSortedQueue;
+import io.github.litschiw.util.HeadSortedQueue;
+import io.github.litschiw.util.MultiHeadSortedQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// hold model shared by all threads, run with e.g. -t 1 / -t 4 / -t 16 and compare the throughput per thread count
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentHoldBenchmark {
+
+    public enum ConcurrentQueueType {
+        MULTI_HEAD_SORTED,
+        CONCURRENT_HEAD_SORTED,
+        LOCKED_HEAD_SORTED,
+        PRIORITY_BLOCKING_QUEUE
+    }
+
+    @Param({"MULTI_HEAD_SORTED", "CONCURRENT_HEAD_SORTED", "LOCKED_HEAD_SORTED", "PRIORITY_BLOCKING_QUEUE"})
+    public ConcurrentQueueType queueType;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"100"})
+    public double bucketSize;
+
+    private Queue<BenchmarkElement> queue;
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        queue = switch (queueType) {
+            case MULTI_HEAD_SORTED -> new MultiHeadSortedQueue<>(bucketSize);
+            case CONCURRENT_HEAD_SORTED -> new ConcurrentHeadSortedQueue<>(bucketSize);
+            case LOCKED_HEAD_SORTED -> new HeadSortedQueue<>(bucketSize);
+            case PRIORITY_BLOCKING_QUEUE -> new PriorityBlockingQueue<>(11, BenchmarkElement.COMPARATOR);
+        };
+
+        SplittableRandom random = new SplittableRandom(QueueBenchmarkBase.SEED);
+        for (int i = 0; i < size; i++) {
+            queue.offer(new BenchmarkElement(random.nextDouble() * size, i));
+        }
+        nextId.set(size);
+    }
+
+    @Benchmark
+    public BenchmarkElement hold() {
+        BenchmarkElement polled = poll();
+        double priority = polled == null ? 0 : polled.priority();
+        double increment = 2 * ThreadLocalRandom.current().nextDouble() * size;
+        offer(new BenchmarkElement(priority + increment, nextId.getAndIncrement()));
+        return polled;
+    }
+
+    private BenchmarkElement poll() {
+        if (queueType == ConcurrentQueueType.LOCKED_HEAD_SORTED) {
+            // the single global lock this queue has to be wrapped in when shared between threads
+            synchronized (queue) {
+                return queue.poll();
+            }
+        }
+        return queue.poll();
+    }
+
+    private void offer(BenchmarkElement element) {
+        if (queueType == ConcurrentQueueType.LOCKED_HEAD_SORTED) {
+            synchronized (queue) {
+                queue.offer(element);
+            }
+            return;
+        }
+        queue.offer(element);
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.litschiw.util.benchmarks;
+
+import io.github.litschiw.util.ConcurrentHeadSortedQueue;
+import io.github.litschiw.util.HeadSortedQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// producer scaling of offer, run with e.g. -t 1 / -t 4 / -t 16 and compare the throughput per thread count
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = 100000)
+@Measurement(iterations = 10, batchSize = 100000)
+@Fork(1)
+public class ConcurrentOfferBenchmark {
+
+    public enum ConcurrentQueueType {
+        CONCURRENT_HEAD_SORTED,
+        LOCKED_HEAD_SORTED,
+        PRIORITY_BLOCKING_QUEUE
+    }
+
+    @Param({"CONCURRENT_HEAD_SORTED", "LOCKED_HEAD_SORTED", "PRIORITY_BLOCKING_QUEUE"})
+    public ConcurrentQueueType queueType;
+
+    @Param({"1", "100"})
+    public double bucketSize;
+
+    private Queue<BenchmarkElement> queue;
+
+    @Setup(Level.Iteration)
+    public void createQueue() {
+        queue = switch (queueType) {
+            case CONCURRENT_HEAD_SORTED -> new ConcurrentHeadSortedQueue<>(bucketSize);
+            case LOCKED_HEAD_SORTED -> new HeadSortedQueue<>(bucketSize);
+            case PRIORITY_BLOCKING_QUEUE -> new PriorityBlockingQueue<>(11, BenchmarkElement.COMPARATOR);
+        };
+    }
+
+    @Benchmark
+    public boolean offer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        BenchmarkElement element = new BenchmarkElement(random.nextDouble(100000), random.nextLong());
+        if (queueType == ConcurrentQueueType.LOCKED_HEAD_SORTED) {
+            // the single global lock this queue has to be wrapped in when shared between threads
+            synchronized (queue) {
+                return queue.offer(element);
+            }
+        }
+        return queue.offer(element);
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.litschiw.util.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.SplittableRandom;
+
+// a single contains call on a queue of size elements, half of the probes are hits
+public class ContainsBenchmark extends QueueBenchmarkBase {
+
+    private static final int PROBES = 1024;
+
+    private final BenchmarkElement[] probes = new BenchmarkElement[PROBES];
+
+    private BenchmarkQueue queue;
+
+    private int cursor;
+
+    @Override
+    protected void prepare() {
+        queue = filledQueue();
+
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = (i & 1) == 0
+                    ? elements[random.nextInt(elements.length)]
+                    : new BenchmarkElement(distribution.sample(random) * size, -i);
+        }
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return queue.contains(probes[cursor++ & (PROBES - 1)]);
+    }
+}
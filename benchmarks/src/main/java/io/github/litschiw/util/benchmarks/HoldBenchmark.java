@@ -0,0 +1,40 @@
+package io.github.litschiw.util.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.SplittableRandom;
+
+// steady state mixed workload: poll the smallest element and offer a new one at its priority plus a random increment
+public class HoldBenchmark extends QueueBenchmarkBase {
+
+    private static final int INCREMENTS = 1 << 16;
+
+    private final double[] increments = new double[INCREMENTS];
+
+    private BenchmarkQueue queue;
+
+    private int cursor;
+
+    private long nextId;
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        queue = filledQueue();
+        nextId = size;
+
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        for (int i = 0; i < INCREMENTS; i++) {
+            increments[i] = distribution.sample(random) * size;
+        }
+    }
+
+    @Benchmark
+    public BenchmarkElement hold() {
+        BenchmarkElement polled = queue.poll();
+        double increment = increments[cursor++ & (INCREMENTS - 1)];
+        queue.offer(new BenchmarkElement(polled.priority() + increment, nextId++));
+        return polled;
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.litschiw.util.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.Iterator;
+
+// time to walk all elements of a queue of size elements, sequentially and with a parallel stream
+public class IteratorBenchmark extends QueueBenchmarkBase {
+
+    private BenchmarkQueue queue;
+
+    @Override
+    protected void prepare() {
+        queue = filledQueue();
+    }
+
+    @Benchmark
+    public double iterate() {
+        double sum = 0;
+        Iterator<BenchmarkElement> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            sum += iterator.next().priority();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double parallelStreamSum() {
+        return queue.parallelStream().mapToDouble(BenchmarkElement::priority).sum();
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.litschiw.util.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+// time to fill an empty queue with size elements
+public class OfferBenchmark extends QueueBenchmarkBase {
+
+    @Benchmark
+    public BenchmarkQueue offer() {
+        return filledQueue();
+    }
+}
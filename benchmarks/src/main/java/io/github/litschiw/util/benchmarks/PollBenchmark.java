@@ -0,0 +1,25 @@
+package io.github.litschiw.util.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// time to drain a queue of size elements
+public class PollBenchmark extends QueueBenchmarkBase {
+
+    private BenchmarkQueue queue;
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        queue = filledQueue();
+    }
+
+    @Benchmark
+    public void poll(Blackhole blackhole) {
+        BenchmarkElement element;
+        while ((element = queue.poll()) != null) {
+            blackhole.consume(element);
+        }
+    }
+}
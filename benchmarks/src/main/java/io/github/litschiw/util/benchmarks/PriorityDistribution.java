@@ -0,0 +1,57 @@
+package io.github.litschiw.util.benchmarks;
+
+import java.util.SplittableRandom;
+
+public enum PriorityDistribution {
+    UNIFORM {
+        @Override
+        public double sample(SplittableRandom random) {
+            return 2 * random.nextDouble();
+        }
+    },
+    EXPONENTIAL {
+        @Override
+        public double sample(SplittableRandom random) {
+            return -Math.log(1 - random.nextDouble());
+        }
+    },
+    // 90% of the samples in [0, 0.2), 10% far out in [8.1, 10.1)
+    BIMODAL {
+        @Override
+        public double sample(SplittableRandom random) {
+            return random.nextDouble() < 0.9 ? 0.2 * random.nextDouble() : 8.1 + 2 * random.nextDouble();
+        }
+    },
+    // density rising linearly over [0, 1.5)
+    TRIANGULAR {
+        @Override
+        public double sample(SplittableRandom random) {
+            return 1.5 * Math.sqrt(random.nextDouble());
+        }
+    },
+    // two humps of width 0.2 around 0.5 and 1.5 holding 40% each, the rest uniform over [0, 2)
+    CAMEL {
+        @Override
+        public double sample(SplittableRandom random) {
+            double choice = random.nextDouble();
+            if (choice < 0.4) {
+                return 0.4 + 0.2 * random.nextDouble();
+            }
+            if (choice < 0.8) {
+                return 1.4 + 0.2 * random.nextDouble();
+            }
+            return 2 * random.nextDouble();
+        }
+    };
+
+    // all distributions have a mean of 1, callers scale the samples to the range they need
+    public abstract double sample(SplittableRandom random);
+
+    public BenchmarkElement[] elements(int count, double scale, SplittableRandom random) {
+        BenchmarkElement[] elements = new BenchmarkElement[count];
+        for (int i = 0; i < count; i++) {
+            elements[i] = new BenchmarkElement(sample(random) * scale, i);
+        }
+        return elements;
+    }
+}
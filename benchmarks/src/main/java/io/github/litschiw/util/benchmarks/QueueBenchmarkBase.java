@@ -0,0 +1,62 @@
+package io.github.litschiw.util.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class QueueBenchmarkBase {
+
+    protected static final long SEED = 0x5EED;
+
+    // the types that do not use the bucket size are only measured with this one instead of once per bucket size
+    private static final double SHARED_BUCKET_SIZE = 1;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    // priorities are spread over roughly [0, 2 * size), see QueueType#usesBucketSize() for the types that use it
+    @Param({"1", "100", "10000"})
+    public double bucketSize;
+
+    @Param({"UNIFORM", "EXPONENTIAL", "BIMODAL", "TRIANGULAR", "CAMEL"})
+    public PriorityDistribution distribution;
+
+    @Param({"HEAD_SORTED", "HEAD_SORTED_CALENDAR", "HEAD_SORTED_ARRAY_HEAD", "HEAD_SORTED_POOLED", "HEAD_SORTED_BAG", "HEAD_SORTED_PRIMITIVE", "HEAD_SORTED_LADDER", "PRIORITY_QUEUE", "TREE_SET", "ARRAY_LIST"})
+    public QueueType queueType;
+
+    protected BenchmarkElement[] elements;
+
+    @Setup(Level.Trial)
+    public void generateElements() {
+        //JMH cannot leave out single parameter combinations, failing the setup skips the trial
+        if (!queueType.usesBucketSize() && bucketSize != SHARED_BUCKET_SIZE) {
+            throw new IllegalStateException(queueType + " does not use the bucket size, it only runs with bucketSize="
+                    + SHARED_BUCKET_SIZE);
+        }
+        elements = distribution.elements(size, size, new SplittableRandom(SEED));
+        prepare();
+    }
+
+    // per trial preparation of subclasses, JMH does not order setup methods of the same level
+    protected void prepare() {
+    }
+
+    protected BenchmarkQueue newQueue() {
+        return queueType.create(bucketSize);
+    }
+
+    protected BenchmarkQueue filledQueue() {
+        BenchmarkQueue queue = newQueue();
+        for (BenchmarkElement element : elements) {
+            queue.offer(element);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,221 @@
+package io.github.litschiw.util.benchmarks;
+
+import io.github.litschiw.util.BucketStructure;
+import io.github.litschiw.util.HeadSortedQueue;
+import io.github.litschiw.util.HeadStructure;
+import io.github.litschiw.util.LadderHeadSortedQueue;
+import io.github.litschiw.util.PrimitiveHeadSortedQueue;
+import io.github.litschiw.util.TailStructure;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+public enum QueueType {
+    HEAD_SORTED(true) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new QueueAdapter(new HeadSortedQueue<>(bucketSize));
+        }
+    },
+    HEAD_SORTED_CALENDAR(true) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new QueueAdapter(new HeadSortedQueue<>(bucketSize, 0, 1024, TailStructure.CALENDAR));
+        }
+    },
+    HEAD_SORTED_ARRAY_HEAD(true) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new QueueAdapter(new HeadSortedQueue<>(bucketSize, 0, 0, TailStructure.TREE_MAP, HeadStructure.SORTED_ARRAY));
+        }
+    },
+    HEAD_SORTED_POOLED(true) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new QueueAdapter(new HeadSortedQueue<>(bucketSize, 0, 1024, TailStructure.CALENDAR, HeadStructure.BINARY_HEAP, true));
+        }
+    },
+    HEAD_SORTED_BAG(true) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new QueueAdapter(new HeadSortedQueue<>(bucketSize, 0, 1024, TailStructure.CALENDAR, HeadStructure.BINARY_HEAP,
+                    BucketStructure.BAG, true));
+        }
+    },
+    HEAD_SORTED_PRIMITIVE(true) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new QueueAdapter(new PrimitiveHeadSortedQueue<>(bucketSize));
+        }
+    },
+    HEAD_SORTED_LADDER(false) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new QueueAdapter(new LadderHeadSortedQueue<>());
+        }
+    },
+    PRIORITY_QUEUE(false) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new QueueAdapter(new PriorityQueue<>(BenchmarkElement.COMPARATOR));
+        }
+    },
+    TREE_SET(false) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new TreeSetAdapter();
+        }
+    },
+    ARRAY_LIST(false) {
+        @Override
+        public BenchmarkQueue create(double bucketSize) {
+            return new SortedArrayListAdapter();
+        }
+    };
+
+    private final boolean usesBucketSize;
+
+    QueueType(boolean usesBucketSize) {
+        this.usesBucketSize = usesBucketSize;
+    }
+
+    /**
+     * Whether {@link #create(double)} depends on the bucket size, the other types only need to be measured once.
+     */
+    public boolean usesBucketSize() {
+        return usesBucketSize;
+    }
+
+    public abstract BenchmarkQueue create(double bucketSize);
+
+    private record QueueAdapter(Queue<BenchmarkElement> queue) implements BenchmarkQueue {
+
+        @Override
+        public void offer(BenchmarkElement element) {
+            queue.offer(element);
+        }
+
+        @Override
+        public BenchmarkElement poll() {
+            return queue.poll();
+        }
+
+        @Override
+        public boolean remove(BenchmarkElement element) {
+            return queue.remove(element);
+        }
+
+        @Override
+        public boolean contains(BenchmarkElement element) {
+            return queue.contains(element);
+        }
+
+        @Override
+        public Iterator<BenchmarkElement> iterator() {
+            return queue.iterator();
+        }
+
+        @Override
+        public Stream<BenchmarkElement> parallelStream() {
+            return queue.parallelStream();
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+    }
+
+    private static final class TreeSetAdapter implements BenchmarkQueue {
+
+        private final TreeSet<BenchmarkElement> set = new TreeSet<>(BenchmarkElement.COMPARATOR);
+
+        @Override
+        public void offer(BenchmarkElement element) {
+            set.add(element);
+        }
+
+        @Override
+        public BenchmarkElement poll() {
+            return set.pollFirst();
+        }
+
+        @Override
+        public boolean remove(BenchmarkElement element) {
+            return set.remove(element);
+        }
+
+        @Override
+        public boolean contains(BenchmarkElement element) {
+            return set.contains(element);
+        }
+
+        @Override
+        public Iterator<BenchmarkElement> iterator() {
+            return set.iterator();
+        }
+
+        @Override
+        public Stream<BenchmarkElement> parallelStream() {
+            return set.parallelStream();
+        }
+
+        @Override
+        public int size() {
+            return set.size();
+        }
+    }
+
+    // kept in descending order so that poll removes from the end of the backing array
+    private static final class SortedArrayListAdapter implements BenchmarkQueue {
+
+        private static final Comparator<BenchmarkElement> DESCENDING = BenchmarkElement.COMPARATOR.reversed();
+
+        private final ArrayList<BenchmarkElement> list = new ArrayList<>();
+
+        private int indexOf(BenchmarkElement element) {
+            return Collections.binarySearch(list, element, DESCENDING);
+        }
+
+        @Override
+        public void offer(BenchmarkElement element) {
+            int index = indexOf(element);
+            list.add(index < 0 ? -index - 1 : index, element);
+        }
+
+        @Override
+        public BenchmarkElement poll() {
+            return list.isEmpty() ? null : list.remove(list.size() - 1);
+        }
+
+        @Override
+        public boolean remove(BenchmarkElement element) {
+            int index = indexOf(element);
+            if (index < 0) {
+                return false;
+            }
+            list.remove(index);
+            return true;
+        }
+
+        @Override
+        public boolean contains(BenchmarkElement element) {
+            return indexOf(element) >= 0;
+        }
+
+        @Override
+        public Iterator<BenchmarkElement> iterator() {
+            return list.iterator();
+        }
+
+        @Override
+        public Stream<BenchmarkElement> parallelStream() {
+            return list.parallelStream();
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+    }
+}
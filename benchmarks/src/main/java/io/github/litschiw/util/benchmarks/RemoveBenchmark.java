@@ -0,0 +1,40 @@
+package io.github.litschiw.util.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+
+// time to empty a queue of size elements by removing them in random order
+public class RemoveBenchmark extends QueueBenchmarkBase {
+
+    private BenchmarkElement[] removalOrder;
+
+    private BenchmarkQueue queue;
+
+    @Override
+    protected void prepare() {
+        removalOrder = elements.clone();
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        for (int i = removalOrder.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            BenchmarkElement swap = removalOrder[i];
+            removalOrder[i] = removalOrder[j];
+            removalOrder[j] = swap;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        queue = filledQueue();
+    }
+
+    @Benchmark
+    public void remove(Blackhole blackhole) {
+        for (BenchmarkElement element : removalOrder) {
+            blackhole.consume(queue.remove(element));
+        }
+    }
+}
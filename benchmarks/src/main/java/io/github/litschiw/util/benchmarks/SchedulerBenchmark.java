@@ -0,0 +1,78 @@
+package io.github.litschiw.util.benchmarks;
+
+import io.github.litschiw.util.HeadSortedScheduledExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// timeout pattern: pendingTasks timeouts are armed, then each operation arms one more and cancels one of them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    public enum SchedulerType {
+        HEAD_SORTED,
+        SCHEDULED_THREAD_POOL
+    }
+
+    @Param({"HEAD_SORTED", "SCHEDULED_THREAD_POOL"})
+    public SchedulerType schedulerType;
+
+    @Param({"10000", "1000000"})
+    public int pendingTasks;
+
+    // only used by HEAD_SORTED, timeouts spread over an hour so coarse ticks share buckets
+    @Param({"1", "100"})
+    public long tickMillis;
+
+    private static final Runnable NOTHING = () -> {
+    };
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?>[] futures;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void createScheduler() {
+        scheduler = switch (schedulerType) {
+            case HEAD_SORTED -> new HeadSortedScheduledExecutor(tickMillis, TimeUnit.MILLISECONDS);
+            case SCHEDULED_THREAD_POOL -> {
+                ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+                executor.setRemoveOnCancelPolicy(true);
+                yield executor;
+            }
+        };
+
+        random = new SplittableRandom(42);
+        futures = new ScheduledFuture<?>[pendingTasks];
+        for (int i = 0; i < pendingTasks; i++) {
+            futures[i] = schedule();
+        }
+    }
+
+    // far enough out that no timeout fires during the run
+    private ScheduledFuture<?> schedule() {
+        return scheduler.schedule(NOTHING, 3600_000 + random.nextInt(3600_000), TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        int index = random.nextInt(pendingTasks);
+        boolean cancelled = futures[index].cancel(false);
+        futures[index] = schedule();
+        return cancelled;
+    }
+}
@@ -0,0 +1,211 @@
+package io.github.litschiw.util.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Replays a recorded trace of queue operations and prints the throughput and the latency percentiles per queue type
+ * and bucket size, e.g. to choose the bucket size for a production workload:
+ * {@code java -cp target/benchmarks.jar io.github.litschiw.util.benchmarks.TraceReplay replay trace.txt HEAD_SORTED,PRIORITY_QUEUE 1,10,100}.
+ * <p>
+ * A trace has one operation per line, {@code offer <id> <priority>}, {@code poll} or {@code remove <id>}, where the id
+ * names the offered element. Empty lines and lines starting with {@code #} are skipped.
+ * {@code TraceReplay generate trace.txt EXPONENTIAL 100000 1000000} writes a hold model trace to start from: 100000
+ * offers, then 1000000 times a poll followed by an offer at the polled priority plus a random increment.
+ */
+public final class TraceReplay {
+
+    private static final byte OFFER = 0;
+    private static final byte POLL = 1;
+    private static final byte REMOVE = 2;
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // keeps the results of the operations alive
+    private static long sink;
+
+    private final byte[] operations;
+    private final BenchmarkElement[] elements; // null for polls
+
+    private TraceReplay(byte[] operations, BenchmarkElement[] elements) {
+        this.operations = operations;
+        this.elements = elements;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("replay")) {
+            List<QueueType> queueTypes = args.length > 2
+                    ? Arrays.stream(args[2].split(",")).map(QueueType::valueOf).toList()
+                    : List.of(QueueType.values());
+            double[] bucketSizes = args.length > 3
+                    ? Arrays.stream(args[3].split(",")).mapToDouble(Double::parseDouble).toArray()
+                    : new double[]{1, 100, 10000};
+            read(Path.of(args[1])).replay(queueTypes, bucketSizes);
+        } else if (args.length == 5 && args[0].equals("generate")) {
+            generate(Path.of(args[1]), PriorityDistribution.valueOf(args[2]), Integer.parseInt(args[3]),
+                    Integer.parseInt(args[4]));
+        } else {
+            System.err.println("usage: TraceReplay replay <trace> [queue types] [bucket sizes]");
+            System.err.println("       TraceReplay generate <trace> <distribution> <size> <hold operations>");
+            System.exit(2);
+        }
+    }
+
+    private static TraceReplay read(Path trace) throws IOException {
+        List<Byte> operations = new ArrayList<>();
+        List<BenchmarkElement> elements = new ArrayList<>();
+        Map<Long, BenchmarkElement> offered = new HashMap<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(trace)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("\\s+");
+                try {
+                    switch (parts[0]) {
+                        case "offer" -> {
+                            BenchmarkElement element = new BenchmarkElement(Double.parseDouble(parts[2]), Long.parseLong(parts[1]));
+                            offered.put(element.id(), element);
+                            operations.add(OFFER);
+                            elements.add(element);
+                        }
+                        case "poll" -> {
+                            operations.add(POLL);
+                            elements.add(null);
+                        }
+                        case "remove" -> {
+                            BenchmarkElement element = offered.get(Long.parseLong(parts[1]));
+                            if (element == null) {
+                                throw new IllegalArgumentException("removes an element that was never offered");
+                            }
+                            operations.add(REMOVE);
+                            elements.add(element);
+                        }
+                        default -> throw new IllegalArgumentException("unknown operation " + parts[0]);
+                    }
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("line " + lineNumber + " of " + trace + " is broken: " + line, e);
+                }
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException(trace + " does not contain any operation");
+        }
+
+        byte[] operationArray = new byte[operations.size()];
+        for (int i = 0; i < operationArray.length; i++) {
+            operationArray[i] = operations.get(i);
+        }
+        return new TraceReplay(operationArray, elements.toArray(new BenchmarkElement[0]));
+    }
+
+    private void replay(List<QueueType> queueTypes, double[] bucketSizes) {
+        System.out.printf("%d operations, %d warmup and %d measured rounds%n", operations.length, WARMUP_ROUNDS, MEASURED_ROUNDS);
+        System.out.printf("%-24s %12s %14s %10s %10s %10s %10s %12s%n",
+                "queue type", "bucket size", "ops/s", "p50 ns", "p90 ns", "p99 ns", "p99.9 ns", "max ns");
+
+        for (QueueType queueType : queueTypes) {
+            double[] sizes = queueType.usesBucketSize() ? bucketSizes : new double[]{Double.NaN};
+            for (double bucketSize : sizes) {
+                for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                    run(queueType.create(bucketSize));
+                    runTimed(queueType.create(bucketSize), new long[operations.length]);
+                }
+
+                long elapsed = 0;
+                for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                    elapsed += run(queueType.create(bucketSize));
+                }
+
+                //timing every operation adds the cost of two clock reads, so throughput is measured in separate rounds
+                long[] latencies = new long[operations.length * MEASURED_ROUNDS];
+                for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                    long[] roundLatencies = new long[operations.length];
+                    runTimed(queueType.create(bucketSize), roundLatencies);
+                    System.arraycopy(roundLatencies, 0, latencies, round * operations.length, operations.length);
+                }
+                Arrays.sort(latencies);
+
+                System.out.printf("%-24s %12s %14.0f %10d %10d %10d %10d %12d%n",
+                        queueType, Double.isNaN(bucketSize) ? "-" : bucketSize,
+                        (double) operations.length * MEASURED_ROUNDS / elapsed * 1e9,
+                        percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                        percentile(latencies, 0.999), latencies[latencies.length - 1]);
+            }
+        }
+    }
+
+    // returns the elapsed nanoseconds
+    private long run(BenchmarkQueue queue) {
+        long start = System.nanoTime();
+        for (int i = 0; i < operations.length; i++) {
+            apply(queue, i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void runTimed(BenchmarkQueue queue, long[] latencies) {
+        for (int i = 0; i < operations.length; i++) {
+            long start = System.nanoTime();
+            apply(queue, i);
+            latencies[i] = System.nanoTime() - start;
+        }
+    }
+
+    private void apply(BenchmarkQueue queue, int i) {
+        switch (operations[i]) {
+            case OFFER -> queue.offer(elements[i]);
+            case POLL -> {
+                BenchmarkElement polled = queue.poll();
+                if (polled != null) {
+                    sink += polled.id();
+                }
+            }
+            default -> {
+                if (queue.remove(elements[i])) {
+                    sink++;
+                }
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static void generate(Path trace, PriorityDistribution distribution, int size, int holdOperations) throws IOException {
+        SplittableRandom random = new SplittableRandom(QueueBenchmarkBase.SEED);
+        PriorityQueue<BenchmarkElement> queue = new PriorityQueue<>(BenchmarkElement.COMPARATOR);
+        long nextId = 0;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(trace)) {
+            writer.write("# hold model, " + distribution + " increments, " + size + " elements\n");
+            for (int i = 0; i < size; i++) {
+                nextId = offer(writer, queue, new BenchmarkElement(distribution.sample(random) * size, nextId));
+            }
+            for (int i = 0; i < holdOperations; i++) {
+                BenchmarkElement polled = queue.poll();
+                writer.write("poll\n");
+                double now = polled == null ? 0 : polled.priority();
+                nextId = offer(writer, queue, new BenchmarkElement(now + distribution.sample(random) * size, nextId));
+            }
+        }
+    }
+
+    private static long offer(BufferedWriter writer, Queue<BenchmarkElement> queue, BenchmarkElement element) throws IOException {
+        queue.offer(element);
+        writer.write("offer " + element.id() + " " + element.priority() + "\n");
+        return element.id() + 1;
+    }
+}
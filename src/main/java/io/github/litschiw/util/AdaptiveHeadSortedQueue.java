@@ -0,0 +1,367 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * {@link HeadSortedQueue} variant that tunes its bucket width to the priority distribution.
+ * <p>
+ * Tail buckets cover arbitrary, non-overlapping priority ranges and are keyed by their lower border. New buckets are
+ * created with the current effective width. Whenever the head runs empty, the next bucket is inspected: if it holds
+ * more than twice the target occupancy it is split into sub-buckets of about the target size, of which only the first
+ * one is promoted, and if it holds less than the target occupancy, the following sparse neighbours are merged into
+ * the same promotion. After each promotion the effective width is moved towards the width that would have produced a
+ * bucket of the target occupancy. The tuning only changes which elements share a bucket, never the order of
+ * {@link #poll()}.
+ */
+public class AdaptiveHeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
+
+    // how far a single promotion may move the effective width
+    private static final double MAX_WIDTH_CHANGE = 2;
+
+    private final Comparator<Bucketable> bucketComparator = Comparator.comparingDouble(Bucketable::priority);
+
+    private final int targetBucketOccupancy;
+
+    private double effectiveBucketWidth;
+    private double headUpperBound;
+
+    private final PriorityQueue<T> headQueue = new PriorityQueue<>(bucketComparator);
+
+    private final TreeMap<Double, Bucket<T>> tailMap = new TreeMap<>();
+
+    private int size = 0;
+
+    public AdaptiveHeadSortedQueue(double initialBucketSize, int targetBucketOccupancy) {
+        this(initialBucketSize, 0, targetBucketOccupancy); // assuming positive values by default
+    }
+
+    public AdaptiveHeadSortedQueue(double initialBucketSize, double expectedRangeStart, int targetBucketOccupancy) {
+        if (!(initialBucketSize > 0)) {
+            throw new IllegalArgumentException("the bucket size needs to be positive but was " + initialBucketSize);
+        }
+        if (targetBucketOccupancy <= 0) {
+            throw new IllegalArgumentException("the target occupancy needs to be positive but was " + targetBucketOccupancy);
+        }
+
+        this.effectiveBucketWidth = initialBucketSize;
+        this.targetBucketOccupancy = targetBucketOccupancy;
+        this.headUpperBound = expectedRangeStart + initialBucketSize; // assuming positive values by default
+    }
+
+    /**
+     * The width new tail buckets are created with, tuned on every promotion.
+     */
+    public double getEffectiveBucketWidth() {
+        return effectiveBucketWidth;
+    }
+
+    public int getTargetBucketOccupancy() {
+        return targetBucketOccupancy;
+    }
+
+    /**
+     * Number of tail buckets, including empty ones that have not been promoted yet.
+     */
+    public int getBucketCount() {
+        return tailMap.size();
+    }
+
+
+    /**
+     * Iterates a snapshot of the queued elements in no particular order, removal goes through the queue.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        if (size() == 0) {
+            return Collections.emptyIterator();
+        }
+
+        List<T> snapshot = new ArrayList<>(size());
+        snapshot.addAll(headQueue);
+        tailMap.values().forEach(bucket -> snapshot.addAll(bucket.elements));
+        Iterator<T> elements = snapshot.iterator();
+
+        return new Iterator<>() {
+            private T last;
+
+            @Override
+            public boolean hasNext() {
+                return elements.hasNext();
+            }
+
+            @Override
+            public T next() {
+                last = elements.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                AdaptiveHeadSortedQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public T peek() {
+        if (size == 0) {
+            return null;
+        }
+
+        refillHead();
+        return headQueue.peek();
+    }
+
+    @Override
+    public T poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        refillHead();
+        T polled = headQueue.poll();
+
+        if (polled != null) {
+            size--;
+        }
+
+        return polled;
+    }
+
+    private void refillHead() {
+        while (headQueue.isEmpty() && !tailMap.isEmpty()) {
+            Bucket<T> bucket = tailMap.pollFirstEntry().getValue();
+            if (bucket.elements.size() > 2 * targetBucketOccupancy) {
+                bucket = split(bucket);
+            }
+
+            double promotedLower = bucket.lower;
+            int promoted = bucket.elements.size();
+            headQueue.addAll(bucket.elements);
+            headUpperBound = Math.max(headUpperBound, bucket.upper);
+
+            //merge sparse neighbours into the same promotion
+            while (promoted < targetBucketOccupancy && !tailMap.isEmpty()
+                    && promoted + tailMap.firstEntry().getValue().elements.size() <= targetBucketOccupancy) {
+                Bucket<T> neighbour = tailMap.pollFirstEntry().getValue();
+                promoted += neighbour.elements.size();
+                headQueue.addAll(neighbour.elements);
+                headUpperBound = Math.max(headUpperBound, neighbour.upper);
+            }
+
+            adaptWidth(promoted, headUpperBound - promotedLower);
+        }
+    }
+
+    // splits the bucket into sub-buckets of about the target occupancy, puts all but the first back and returns that
+    private Bucket<T> split(Bucket<T> bucket) {
+        while (bucket.elements.size() > 2 * targetBucketOccupancy) {
+            int parts = (bucket.elements.size() + targetBucketOccupancy - 1) / targetBucketOccupancy;
+            double width = (bucket.upper - bucket.lower) / parts;
+
+            double[] borders = new double[parts + 1];
+            for (int i = 0; i < parts; i++) {
+                borders[i] = bucket.lower + i * width;
+            }
+            borders[parts] = bucket.upper;
+            if (!(borders[1] > borders[0])) {
+                return bucket; // the range cannot be split any further
+            }
+
+            @SuppressWarnings("unchecked")
+            Bucket<T>[] subBuckets = new Bucket[parts];
+            for (T element : bucket.elements) {
+                double priority = element.priority();
+                //the estimate can be off by one because of rounding, the borders are what lookups use later on
+                int part = Math.max(0, Math.min(parts - 1, (int) ((priority - bucket.lower) / width)));
+                while (part > 0 && priority < borders[part]) {
+                    part--;
+                }
+                while (part < parts - 1 && priority >= borders[part + 1]) {
+                    part++;
+                }
+                if (subBuckets[part] == null) {
+                    subBuckets[part] = new Bucket<>(borders[part], borders[part + 1]);
+                }
+                subBuckets[part].elements.add(element);
+            }
+
+            Bucket<T> first = null;
+            for (Bucket<T> subBucket : subBuckets) {
+                if (subBucket == null) {
+                    continue;
+                }
+                if (first == null) {
+                    first = subBucket;
+                } else {
+                    tailMap.put(subBucket.lower, subBucket);
+                }
+            }
+            bucket = first;
+        }
+        return bucket;
+    }
+
+    private void adaptWidth(int promoted, double promotedRange) {
+        if (promoted == 0 || !(promotedRange > 0) || Double.isInfinite(promotedRange)) {
+            return;
+        }
+
+        double desiredWidth = promotedRange * targetBucketOccupancy / promoted;
+        double clamped = Math.max(effectiveBucketWidth / MAX_WIDTH_CHANGE, Math.min(effectiveBucketWidth * MAX_WIDTH_CHANGE, desiredWidth));
+        effectiveBucketWidth = (effectiveBucketWidth + clamped) / 2;
+    }
+
+    @Override
+    public boolean offer(T element) {
+        Objects.requireNonNull(element);
+
+        double priority = element.priority();
+        boolean added;
+
+        if (priority < headUpperBound) {
+            added = headQueue.offer(element);
+        } else {
+            added = bucketFor(priority).elements.add(element);
+        }
+
+        if (added) {
+            size++;
+        }
+
+        return added;
+    }
+
+    private Bucket<T> bucketFor(double priority) {
+        Map.Entry<Double, Bucket<T>> floor = tailMap.floorEntry(priority);
+        if (floor != null && priority < floor.getValue().upper) {
+            return floor.getValue();
+        }
+
+        //new bucket aligned to the effective width, clipped so that it does not overlap its neighbours or the head
+        double lower = Math.min(priority, Math.floor(priority / effectiveBucketWidth) * effectiveBucketWidth);
+        double upper = lower + effectiveBucketWidth;
+        if (!(priority < upper)) {
+            upper = Math.nextUp(priority); // the width is too small to be represented at this magnitude
+        }
+        lower = Math.max(lower, headUpperBound);
+        if (floor != null) {
+            lower = Math.max(lower, floor.getValue().upper);
+        }
+        Double ceiling = tailMap.higherKey(priority);
+        if (ceiling != null) {
+            upper = Math.min(upper, ceiling);
+        }
+
+        Bucket<T> bucket = new Bucket<>(lower, upper);
+        tailMap.put(lower, bucket);
+        return bucket;
+    }
+
+    private Bucket<T> tailBucketOf(double priority) {
+        Map.Entry<Double, Bucket<T>> floor = tailMap.floorEntry(priority);
+        return floor != null && priority < floor.getValue().upper ? floor.getValue() : null;
+    }
+
+
+    @Override
+    public boolean remove(Object element) {
+        if (!(element instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        double priority = bucketable.priority();
+        boolean removed = false;
+
+        if (priority < headUpperBound) {
+            removed = headQueue.remove(bucketable);
+        } else {
+            Bucket<T> bucket = tailBucketOf(priority);
+            if (bucket != null) {
+                removed = bucket.elements.remove(bucketable);
+            }
+        }
+
+        if (removed) {
+            size--;
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+
+        int removed = removeFrom(headQueue, filter);
+        for (Bucket<T> bucket : tailMap.values()) {
+            removed += removeFrom(bucket.elements, filter);
+        }
+
+        size -= removed;
+        return removed > 0;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(element -> !c.contains(element));
+    }
+
+    private static <T> int removeFrom(Collection<T> collection, Predicate<? super T> filter) {
+        int before = collection.size();
+        collection.removeIf(filter);
+        return before - collection.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        double priority = bucketable.priority();
+
+        if (priority < headUpperBound) {
+            return headQueue.contains(o);
+        } else {
+            Bucket<T> bucket = tailBucketOf(priority);
+            return bucket != null && bucket.elements.contains(o);
+        }
+    }
+
+    @Override
+    public void clear() {
+        headQueue.clear();
+        tailMap.clear();
+        size = 0;
+    }
+
+    // covers [lower, upper)
+    private static final class Bucket<T> {
+        private final double lower;
+        private final double upper;
+        private final HashSet<T> elements = new HashSet<>();
+
+        private Bucket(double lower, double upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+    }
+}
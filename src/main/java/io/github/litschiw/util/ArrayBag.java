@@ -0,0 +1,145 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// unordered multiset on a growable array, removal moves the last element into the gap
+final class ArrayBag<T> extends AbstractCollection<T> {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private Object[] elements;
+    private int size = 0;
+
+    ArrayBag() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    ArrayBag(int initialCapacity) {
+        this.elements = new Object[Math.max(1, initialCapacity)];
+    }
+
+    @Override
+    public boolean add(T element) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        }
+        elements[size++] = element;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    private int indexOf(Object o) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(o, elements[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    private void removeAt(int index) {
+        elements[index] = elements[--size];
+        elements[size] = null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+
+        //compacts the kept elements to the front, keeping their order
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!filter.test((T) elements[i])) {
+                elements[kept++] = elements[i];
+            }
+        }
+        if (kept == size) {
+            return false;
+        }
+        Arrays.fill(elements, kept, size, null);
+        size = kept;
+        return true;
+    }
+
+    // keeps the capacity, so pooled bags do not grow again
+    @Override
+    public void clear() {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < size; i++) {
+            action.accept((T) elements[i]);
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int cursor = 0;
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (cursor >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = cursor;
+                return (T) elements[cursor++];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                //the last element moves into the gap and still has to be visited
+                removeAt(last);
+                cursor = last;
+                last = -1;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliterator(elements, 0, size, Spliterator.SIZED);
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.litschiw.util;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// the tail of a HeadSortedQueue, iterates its buckets in ascending bucket id order
+interface BucketMap<T> extends Iterable<Map.Entry<Integer, Collection<T>>> {
+
+    Collection<T> get(int bucketId);
+
+    Collection<T> computeIfAbsent(int bucketId, IntFunction<? extends Collection<T>> mappingFunction);
+
+    // removes the first bucket without allocating an entry for it, null if there is none
+    Collection<T> pollFirstBucket();
+
+    // the id of the bucket returned by the last pollFirstBucket
+    int polledBucketId();
+
+    Map.Entry<Integer, Collection<T>> lastEntry();
+
+    Collection<T> put(int bucketId, Collection<T> bucket);
+
+    Collection<T> remove(int bucketId);
+
+    void clear();
+
+    // the buckets with ids in [fromId, toId], ascending
+    Iterator<Map.Entry<Integer, Collection<T>>> iterator(int fromId, int toId);
+}
@@ -0,0 +1,16 @@
+package io.github.litschiw.util;
+
+/**
+ * Collection that holds the elements of one tail bucket of a {@link HeadSortedQueue}.
+ */
+public enum BucketStructure {
+    /**
+     * A {@link java.util.HashSet}: every tail insert hashes the element and equal elements are only kept once.
+     */
+    HASH_SET,
+    /**
+     * A growable array that keeps duplicates, a tail insert is a plain append. {@code contains} and {@code remove}
+     * scan the bucket of the element linearly, so this suits workloads that mostly offer and poll.
+     */
+    BAG
+}
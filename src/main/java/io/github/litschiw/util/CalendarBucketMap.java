@@ -0,0 +1,230 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+import java.util.function.IntFunction;
+
+// calendar queue: ring[id & mask] holds bucket id for ids in [base, base + ring.length), everything else is overflow
+class CalendarBucketMap<T> implements BucketMap<T> {
+
+    private final Collection<T>[] ring;
+    private final int mask;
+
+    private int base;
+    private int ringBuckets = 0;
+
+    private int polledBucketId;
+
+    private final TreeMap<Integer, Collection<T>> overflow = new TreeMap<>();
+
+    @SuppressWarnings("unchecked")
+    CalendarBucketMap(int base, int horizon) {
+        if (horizon <= 0) {
+            throw new IllegalArgumentException("the calendar needs a horizon of at least one bucket but got " + horizon);
+        }
+        int capacity = Integer.highestOneBit(Math.min(horizon, 1 << 30));
+        if (capacity < horizon && capacity < 1 << 30) {
+            capacity <<= 1;
+        }
+        this.ring = (Collection<T>[]) new Collection[capacity];
+        this.mask = capacity - 1;
+        this.base = base;
+    }
+
+    private boolean inRing(int bucketId) {
+        return bucketId >= base && (long) bucketId - base < ring.length;
+    }
+
+    @Override
+    public Collection<T> get(int bucketId) {
+        return inRing(bucketId) ? ring[bucketId & mask] : overflow.get(bucketId);
+    }
+
+    @Override
+    public Collection<T> computeIfAbsent(int bucketId, IntFunction<? extends Collection<T>> mappingFunction) {
+        if (!inRing(bucketId)) {
+            return TreeBucketMap.computeIfAbsent(overflow, bucketId, mappingFunction);
+        }
+
+        Collection<T> bucket = ring[bucketId & mask];
+        if (bucket == null) {
+            bucket = mappingFunction.apply(bucketId);
+            ring[bucketId & mask] = bucket;
+            ringBuckets++;
+        }
+        return bucket;
+    }
+
+    @Override
+    public Collection<T> pollFirstBucket() {
+        // ids below the ring only show up if the head bound and the bucket ids disagree by a rounding error
+        if (!overflow.isEmpty() && overflow.firstKey() < base) {
+            Integer bucketId = overflow.firstKey();
+            polledBucketId = bucketId;
+            return overflow.remove(bucketId);
+        }
+
+        if (ringBuckets == 0) {
+            if (overflow.isEmpty()) {
+                return null;
+            }
+            // nothing within the horizon, jump straight to the next far out bucket instead of walking the ring
+            base = overflow.firstKey();
+            migrateOverflow();
+        }
+
+        while (ring[base & mask] == null) {
+            base++;
+        }
+
+        int bucketId = base;
+        Collection<T> bucket = ring[bucketId & mask];
+        ring[bucketId & mask] = null;
+        ringBuckets--;
+
+        if (base < Integer.MAX_VALUE) {
+            base++;
+        }
+        migrateOverflow();
+
+        polledBucketId = bucketId;
+        return bucket;
+    }
+
+    @Override
+    public int polledBucketId() {
+        return polledBucketId;
+    }
+
+    @Override
+    public Map.Entry<Integer, Collection<T>> lastEntry() {
+        // overflow ids at or above base are beyond the ring
+        if (!overflow.isEmpty() && overflow.lastKey() >= base) {
+            return overflow.lastEntry();
+        }
+
+        if (ringBuckets > 0) {
+            for (long bucketId = Math.min((long) base + ring.length - 1, Integer.MAX_VALUE); bucketId >= base; bucketId--) {
+                Collection<T> bucket = ring[(int) bucketId & mask];
+                if (bucket != null) {
+                    return new AbstractMap.SimpleImmutableEntry<>((int) bucketId, bucket);
+                }
+            }
+        }
+
+        return overflow.isEmpty() ? null : overflow.lastEntry();
+    }
+
+    @Override
+    public Collection<T> put(int bucketId, Collection<T> bucket) {
+        if (!inRing(bucketId)) {
+            return overflow.put(bucketId, bucket);
+        }
+
+        Collection<T> previous = ring[bucketId & mask];
+        ring[bucketId & mask] = bucket;
+        if (previous == null) {
+            ringBuckets++;
+        }
+        return previous;
+    }
+
+    @Override
+    public Collection<T> remove(int bucketId) {
+        if (!inRing(bucketId)) {
+            return overflow.remove(bucketId);
+        }
+
+        Collection<T> bucket = ring[bucketId & mask];
+        if (bucket != null) {
+            ring[bucketId & mask] = null;
+            ringBuckets--;
+        }
+        return bucket;
+    }
+
+    // moves the overflow buckets that are within the horizon after base moved forward into the ring
+    private void migrateOverflow() {
+        if (overflow.isEmpty()) {
+            return;
+        }
+
+        Iterator<Map.Entry<Integer, Collection<T>>> reachable = overflow.tailMap(base, true).entrySet().iterator();
+        while (reachable.hasNext()) {
+            Map.Entry<Integer, Collection<T>> entry = reachable.next();
+            if (!inRing(entry.getKey())) {
+                break;
+            }
+            ring[entry.getKey() & mask] = entry.getValue();
+            ringBuckets++;
+            reachable.remove();
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(ring, null);
+        ringBuckets = 0;
+        overflow.clear();
+    }
+
+    @Override
+    public Iterator<Map.Entry<Integer, Collection<T>>> iterator() {
+        return iterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // overflow ids in [from, to] as long bounds, empty if the range is
+    private Iterator<Map.Entry<Integer, Collection<T>>> overflowBetween(long from, long to) {
+        if (from > to) {
+            return Collections.emptyIterator();
+        }
+        return overflow.subMap((int) from, true, (int) to, true).entrySet().iterator();
+    }
+
+    @Override
+    public Iterator<Map.Entry<Integer, Collection<T>>> iterator(int fromId, int toId) {
+        // overflow ids at or above base are always beyond the ring, the ones in it were migrated
+        long ringStart = Math.max(fromId, (long) base);
+        long ringEnd = Math.min(toId, (long) base + ring.length - 1);
+
+        return new Iterator<>() {
+            private final Iterator<Map.Entry<Integer, Collection<T>>> below = overflowBetween(fromId, Math.min(toId, base - 1L));
+            private final Iterator<Map.Entry<Integer, Collection<T>>> above = overflowBetween(ringStart, toId);
+            private long offset = ringStart - base;
+            private Map.Entry<Integer, Collection<T>> next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) {
+                    return true;
+                }
+                if (below.hasNext()) {
+                    next = below.next();
+                    return true;
+                }
+                while (offset <= ringEnd - base) {
+                    int bucketId = (int) (base + offset++);
+                    Collection<T> bucket = ring[bucketId & mask];
+                    if (bucket != null) {
+                        next = new AbstractMap.SimpleImmutableEntry<>(bucketId, bucket);
+                        return true;
+                    }
+                }
+                if (above.hasNext()) {
+                    next = above.next();
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public Map.Entry<Integer, Collection<T>> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<Integer, Collection<T>> current = next;
+                next = null;
+                return current;
+            }
+        };
+    }
+}
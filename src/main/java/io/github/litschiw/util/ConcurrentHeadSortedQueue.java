@@ -0,0 +1,493 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Thread-safe, unbounded {@link BlockingQueue} variant of {@link HeadSortedQueue}.
+ * <p>
+ * Tail buckets live in a {@link ConcurrentSkipListMap} and are guarded by a fixed set of striped locks, so producers
+ * inserting into different tail buckets do not contend with each other. Only head inserts, polling and bucket
+ * promotion take the consumer side head lock. {@link #take()} and {@link #poll()} return the elements in exact
+ * priority order.
+ * <p>
+ * The iterator works on a snapshot and is weakly consistent.
+ */
+public class ConcurrentHeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> implements BlockingQueue<T> {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final Comparator<Bucketable> bucketComparator = Comparator.comparingDouble(Bucketable::priority);
+
+    private final double bucketSize;
+
+    // all buckets up to and including this id belong to the head, it only ever grows
+    private volatile int headBucketId;
+
+    private final ReentrantLock headLock = new ReentrantLock();
+    private final Condition notEmpty = headLock.newCondition();
+    private final PriorityQueue<T> headQueue = new PriorityQueue<>(bucketComparator);
+
+    private final ReentrantLock[] stripes;
+    private final ConcurrentSkipListMap<Integer, HashSet<T>> tailMap = new ConcurrentSkipListMap<>();
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    // null while disabled
+    private volatile QueueStatistics statistics;
+
+    public ConcurrentHeadSortedQueue(double bucketSize) {
+        this(bucketSize, 0); // assuming positive values by default
+    }
+
+    public ConcurrentHeadSortedQueue(double bucketSize, Collection<T> elements) {
+        this(bucketSize);
+        this.addAll(elements);
+    }
+
+    public ConcurrentHeadSortedQueue(double bucketSize, double expectedRangeStart) {
+        this(bucketSize, expectedRangeStart, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of tail locks, rounded up to a power of two
+     */
+    public ConcurrentHeadSortedQueue(double bucketSize, double expectedRangeStart, int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("at least one lock stripe is required but got " + stripes);
+        }
+
+        this.bucketSize = bucketSize;
+        this.headBucketId = getBucketId(expectedRangeStart);
+
+        int stripeCount = 1;
+        while (stripeCount < stripes) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+
+    @Override
+    public Iterator<T> iterator() {
+        ArrayList<T> snapshot = new ArrayList<>(size());
+
+        headLock.lock();
+        try {
+            snapshot.addAll(headQueue);
+        } finally {
+            headLock.unlock();
+        }
+
+        for (Map.Entry<Integer, HashSet<T>> entry : tailMap.entrySet()) {
+            ReentrantLock stripe = stripeOf(entry.getKey());
+            stripe.lock();
+            try {
+                snapshot.addAll(entry.getValue());
+            } finally {
+                stripe.unlock();
+            }
+        }
+
+        snapshot.sort(bucketComparator);
+        Iterator<T> iterator = snapshot.iterator();
+        return new Iterator<>() {
+            private T last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return last = iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                ConcurrentHeadSortedQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+
+    @Override
+    public T peek() {
+        headLock.lock();
+        try {
+            refillHead();
+            return headQueue.peek();
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    @Override
+    public T poll() {
+        headLock.lock();
+        try {
+            return pollLocked();
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        headLock.lockInterruptibly();
+        try {
+            T polled;
+            while ((polled = pollLocked()) == null) {
+                awaitNotEmpty();
+            }
+            signalIfNotEmpty();
+            return polled;
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+
+        headLock.lockInterruptibly();
+        try {
+            T polled;
+            while ((polled = pollLocked()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = count.get() == 0 ? notEmpty.awaitNanos(nanos) : nanos;
+            }
+            signalIfNotEmpty();
+            return polled;
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException("cannot drain a queue into itself");
+        }
+
+        headLock.lock();
+        try {
+            int drained = 0;
+            T polled;
+            while (drained < maxElements && (polled = pollLocked()) != null) {
+                c.add(polled);
+                drained++;
+            }
+            return drained;
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    private void awaitNotEmpty() throws InterruptedException {
+        // a concurrent remove may not have decremented the count yet, only sleep if the queue really is empty
+        if (count.get() == 0) {
+            notEmpty.await();
+        } else {
+            Thread.onSpinWait();
+        }
+    }
+
+    // producers only signal when the queue was empty, so every consumer passes the signal on to the next one
+    private void signalIfNotEmpty() {
+        if (count.get() > 0) {
+            notEmpty.signal();
+        }
+    }
+
+    private T pollLocked() {
+        if (count.get() == 0) {
+            return null;
+        }
+
+        refillHead();
+        T polled = headQueue.poll();
+
+        if (polled != null) {
+            count.decrementAndGet();
+        }
+
+        return polled;
+    }
+
+    private void refillHead() {
+        // buckets at or below headBucketId were created by producers that raced with the last promotion
+        Map.Entry<Integer, HashSet<T>> first;
+        while ((first = tailMap.firstEntry()) != null && (first.getKey() <= headBucketId || headQueue.isEmpty())) {
+            promote(first.getKey());
+        }
+    }
+
+    private void promote(int bucketId) {
+        HashSet<T> bucket;
+
+        ReentrantLock stripe = stripeOf(bucketId);
+        stripe.lock();
+        try {
+            bucket = tailMap.remove(bucketId);
+            if (bucketId > headBucketId) {
+                headBucketId = bucketId;
+            }
+        } finally {
+            stripe.unlock();
+        }
+
+        if (bucket != null) {
+            QueueStatistics statistics = this.statistics;
+            if (statistics == null) {
+                headQueue.addAll(bucket);
+            } else {
+                long start = System.nanoTime();
+                headQueue.addAll(bucket);
+                statistics.recordPromotion(bucket.size(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(T element) {
+        Objects.requireNonNull(element);
+
+        int bucketId = getBucketId(element.priority());
+
+        if (bucketId > headBucketId) {
+            Boolean added = offerToTail(bucketId, element);
+            if (added != null) {
+                return added;
+            }
+        }
+
+        headLock.lock();
+        try {
+            headQueue.offer(element);
+            count.getAndIncrement();
+            notEmpty.signal();
+        } finally {
+            headLock.unlock();
+        }
+
+        QueueStatistics statistics = this.statistics;
+        if (statistics != null) {
+            statistics.recordInserts(1, 0);
+        }
+        return true;
+    }
+
+    // returns null if the bucket got promoted before the stripe lock was acquired
+    private Boolean offerToTail(int bucketId, T element) {
+        int previousCount;
+
+        ReentrantLock stripe = stripeOf(bucketId);
+        stripe.lock();
+        try {
+            if (bucketId <= headBucketId) {
+                return null;
+            }
+            if (!tailMap.computeIfAbsent(bucketId, k -> new HashSet<>()).add(element)) {
+                return false;
+            }
+            previousCount = count.getAndIncrement();
+        } finally {
+            stripe.unlock();
+        }
+
+        //signal outside the stripe lock, promotion takes the stripe locks while holding the head lock
+        if (previousCount == 0) {
+            signalNotEmpty();
+        }
+
+        QueueStatistics statistics = this.statistics;
+        if (statistics != null) {
+            statistics.recordInserts(0, 1);
+        }
+        return true;
+    }
+
+    @Override
+    public void put(T element) {
+        offer(element);
+    }
+
+    @Override
+    public boolean offer(T element, long timeout, TimeUnit unit) {
+        return offer(element);
+    }
+
+    @Override
+    public boolean add(T element) {
+        return this.offer(element);
+    }
+
+    private void signalNotEmpty() {
+        headLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+
+    @Override
+    public boolean remove(Object element) {
+        if (!(element instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        int bucketId = getBucketId(bucketable.priority());
+
+        if (bucketId > headBucketId) {
+            ReentrantLock stripe = stripeOf(bucketId);
+            stripe.lock();
+            try {
+                if (bucketId > headBucketId) {
+                    HashSet<T> bucket = tailMap.get(bucketId);
+                    if (bucket == null || !bucket.remove(element)) {
+                        return false;
+                    }
+                    count.decrementAndGet();
+                    return true;
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+
+        headLock.lock();
+        try {
+            // the bucket may still be waiting for promotion if it was created in a race with the last promotion
+            refillHead();
+            if (!headQueue.remove(element)) {
+                return false;
+            }
+            count.decrementAndGet();
+            return true;
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        int bucketId = getBucketId(bucketable.priority());
+
+        if (bucketId > headBucketId) {
+            ReentrantLock stripe = stripeOf(bucketId);
+            stripe.lock();
+            try {
+                if (bucketId > headBucketId) {
+                    HashSet<T> bucket = tailMap.get(bucketId);
+                    return bucket != null && bucket.contains(o);
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+
+        headLock.lock();
+        try {
+            refillHead();
+            return headQueue.contains(o);
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    /**
+     * Starts recording {@link QueueStatistics}. The head size and the bucket sizes are sampled under the head lock and
+     * the stripe locks, so the statistics and their {@link QueueStatistics#snapshot()} can be read from any thread.
+     *
+     * @return the statistics of this queue, the same object on every call
+     */
+    public QueueStatistics enableStatistics() {
+        headLock.lock();
+        try {
+            if (statistics == null) {
+                statistics = new QueueStatistics(this::lockedHeadSize, this::forEachLockedBucketSize);
+            }
+            return statistics;
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    /**
+     * @return the statistics of this queue or {@code null} if they were never enabled
+     */
+    public QueueStatistics getStatistics() {
+        return statistics;
+    }
+
+    private int lockedHeadSize() {
+        headLock.lock();
+        try {
+            return headQueue.size();
+        } finally {
+            headLock.unlock();
+        }
+    }
+
+    private void forEachLockedBucketSize(IntConsumer action) {
+        for (Map.Entry<Integer, HashSet<T>> entry : tailMap.entrySet()) {
+            int bucketSize;
+            ReentrantLock stripe = stripeOf(entry.getKey());
+            stripe.lock();
+            try {
+                bucketSize = entry.getValue().size();
+            } finally {
+                stripe.unlock();
+            }
+            action.accept(bucketSize);
+        }
+    }
+
+    private ReentrantLock stripeOf(int bucketId) {
+        return stripes[bucketId & (stripes.length - 1)];
+    }
+
+    private int getBucketId(double indicator) {
+        return (int) Math.floor(indicator / bucketSize);
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.litschiw.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes elements for {@link OffHeapHeadSortedQueue}.
+ * <p>
+ * {@link #encode(Object, ByteBuffer)} has to write exactly {@link #encodedSize(Object)} bytes at the position of the
+ * buffer and {@link #decode(ByteBuffer)} has to read them back from its position, both advancing the position.
+ * Decoded elements need to be equal to the encoded ones for {@code contains} and {@code remove} to find them.
+ */
+public interface ElementCodec<T> {
+
+    int encodedSize(T element);
+
+    void encode(T element, ByteBuffer target);
+
+    T decode(ByteBuffer source);
+}
@@ -0,0 +1,281 @@
+package io.github.litschiw.util;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link Flow.Publisher} over a {@link HeadSortedQueue}, producers {@link #offer(Bucketable)} from any thread and every
+ * element is emitted to exactly one subscriber.
+ * <p>
+ * Nothing is polled without demand. Once a subscriber requests {@code n} elements, up to {@code n} of the smallest
+ * queued elements are taken in one {@link HeadSortedQueue#pollBatch(int)}, so a demand that covers the head sorts it
+ * once instead of polling it element by element. A subscriber that is waiting for elements is signalled by the next
+ * offer. Signals are delivered on the executor, never on the producer thread, and never concurrently for the same
+ * subscriber.
+ * <p>
+ * Elements are emitted in priority order as far as they are queued at the time of the poll, a smaller element offered
+ * later is emitted with the next batch.
+ */
+public class HeadSortedPublisher<T extends Bucketable> implements Flow.Publisher<T>, AutoCloseable {
+
+    // upper bound for a single poll, so that an unbounded demand still hands the queue over in steps
+    private static final int MAX_BATCH_SIZE = 1 << 12;
+
+    private static final Executor DEFAULT_EXECUTOR = ForkJoinPool.getCommonPoolParallelism() > 1
+            ? ForkJoinPool.commonPool()
+            : task -> new Thread(task).start(); // the common pool may not run tasks on a single core
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final HeadSortedQueue<T> queue;
+    private final Executor executor;
+
+    private final CopyOnWriteArrayList<PrioritySubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // guarded by the lock
+    private boolean closed = false;
+    private Throwable closedException;
+
+    public HeadSortedPublisher(HeadSortedQueue<T> queue) {
+        this(queue, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param queue    taken over by this publisher and must not be used directly afterwards, a bounded queue rejects
+     *                 and evicts as usual
+     * @param executor runs the subscriber signals
+     */
+    public HeadSortedPublisher(HeadSortedQueue<T> queue, Executor executor) {
+        this.queue = Objects.requireNonNull(queue);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+
+    /**
+     * @return false if the queue did not accept the element
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public boolean offer(T element) {
+        Objects.requireNonNull(element);
+
+        boolean added;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("the publisher is closed");
+            }
+            added = queue.offer(element);
+        } finally {
+            lock.unlock();
+        }
+
+        if (added) {
+            for (PrioritySubscription subscription : subscriptions) {
+                if (subscription.demand.get() > 0) {
+                    subscription.signal();
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @return the number of queued elements that were not emitted yet
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        PrioritySubscription subscription = new PrioritySubscription(subscriber);
+        subscriptions.add(subscription);
+        subscription.signal();
+    }
+
+    /**
+     * Accepts no further elements. The subscribers still receive the queued elements and complete once the queue is
+     * empty.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        signalAll();
+    }
+
+    /**
+     * Accepts no further elements, drops the queued ones and passes the error to every subscriber.
+     */
+    public void closeExceptionally(Throwable error) {
+        Objects.requireNonNull(error);
+        lock.lock();
+        try {
+            if (closedException == null) {
+                closedException = error;
+            }
+            closed = true;
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        signalAll();
+    }
+
+    private void signalAll() {
+        for (PrioritySubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    private final class PrioritySubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+        // counts the signals since the last drain, only the signal that raises it from 0 schedules a drain
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+
+        private volatile boolean cancelled = false;
+        private volatile Throwable requestError;
+
+        // only accessed by the drain
+        private boolean subscribed = false;
+
+        private PrioritySubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("the requested number of elements needs to be positive but was " + n);
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    cancel();
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int signals = pendingSignals.get();
+            do {
+                if (!cancelled) {
+                    drain();
+                }
+                signals = pendingSignals.addAndGet(-signals);
+            } while (signals != 0);
+        }
+
+        private void drain() {
+            if (!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+
+            while (!cancelled) {
+                Throwable error = requestError;
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+
+                long n = demand.get();
+                List<T> batch = List.of();
+                boolean completed;
+                lock.lock();
+                try {
+                    if (n > 0) {
+                        batch = queue.pollBatch((int) Math.min(n, MAX_BATCH_SIZE));
+                    }
+                    error = closedException;
+                    completed = closed && queue.isEmpty();
+                } finally {
+                    lock.unlock();
+                }
+
+                if (!batch.isEmpty()) {
+                    emit(batch);
+                    continue;
+                }
+
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                } else if (completed) {
+                    cancel();
+                    subscriber.onComplete();
+                }
+                return;
+            }
+        }
+
+        private void emit(List<T> batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (cancelled) {
+                    requeue(batch.subList(i, batch.size()));
+                    return;
+                }
+                try {
+                    subscriber.onNext(batch.get(i));
+                } catch (Throwable e) {
+                    cancel();
+                    requeue(batch.subList(i + 1, batch.size()));
+                    subscriber.onError(e);
+                    return;
+                }
+                demand.decrementAndGet();
+            }
+        }
+
+        // elements polled for a subscriber that cancelled go to the others
+        private void requeue(List<T> elements) {
+            if (elements.isEmpty()) {
+                return;
+            }
+            lock.lock();
+            try {
+                if (closedException == null) {
+                    queue.addAll(elements);
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (PrioritySubscription subscription : subscriptions) {
+                if (subscription.demand.get() > 0) {
+                    subscription.signal();
+                }
+            }
+        }
+    }
+}
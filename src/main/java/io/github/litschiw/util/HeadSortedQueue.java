@@ -1,20 +1,59 @@
 package io.github.litschiw.util;
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 public class HeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
 
+    private static final int SNAPSHOT_MAGIC = 0x48535131; // "HSQ1"
+    private static final int SNAPSHOT_VERSION = 4;
+
+    // containers that held more elements are not pooled, clear() keeps their table at the peak size
+    private static final int MAX_POOLED_BUCKET_SIZE = 1 << 12;
+    private static final int MIN_POOLED_BUCKETS = 64;
+
     private final Comparator<Bucketable> bucketComparator = Comparator.comparingDouble(Bucketable::priority);
+    private final Comparator<Bucketable> evictionComparator = bucketComparator.reversed();
 
     private final double bucketSize;
     private double headUpperBound;
 
-    private final PriorityQueue<T> headQueue = new PriorityQueue<>(bucketComparator);
+    private final Queue<T> headQueue;
+
+    private final BucketMap<T> tailMap;
 
-    private final TreeMap<Integer, HashSet<T>> tailMap = new TreeMap<>();
+    // kept to write them into snapshots
+    private final int preAllocatedBuckets;
+    private final TailStructure tailStructure;
+    private final HeadStructure headStructure;
+    private final BucketStructure bucketStructure;
+
+    // emptied bucket containers for reuse, null if pooling is disabled
+    private final ArrayDeque<Collection<T>> bucketPool;
+    private final int maxPooledBuckets;
+    private final IntFunction<Collection<T>> bucketFactory;
 
     private int size = 0;
 
+    // null while disabled
+    private QueueStatistics statistics;
+
+    private int maximumSize = Integer.MAX_VALUE;
+    private Consumer<? super T> evictionListener;
+    // never below the id of the last non-empty tail bucket, exact after an eviction, so a full queue rejects in O(1)
+    private int lastBucketId = Integer.MIN_VALUE;
+    // never below the largest priority in the head, exact after an eviction from the head
+    private double headMaximum = Double.NEGATIVE_INFINITY;
+    // largest first heap over the bucket evictionBucketId, may still hold elements that left the bucket, null if unused
+    private PriorityQueue<T> evictionHeap;
+    private int evictionBucketId;
+
     public HeadSortedQueue(double bucketSize) {
         this(bucketSize, 0); // assuming positive values by default
     }
@@ -25,33 +64,145 @@ public class HeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
     }
 
     public HeadSortedQueue(double bucketSize, double expectedRangeStart) {
-        this.bucketSize = bucketSize;
-        this.headUpperBound = expectedRangeStart + bucketSize; // assuming positive values by default
+        this(bucketSize, expectedRangeStart, 0);
     }
 
     public HeadSortedQueue(double bucketSize, double expectedRangeStart, int preAllocatedBuckets) {
-        this(bucketSize, expectedRangeStart);
+        this(bucketSize, expectedRangeStart, preAllocatedBuckets, TailStructure.TREE_MAP);
+    }
+
+    /**
+     * @param preAllocatedBuckets for {@link TailStructure#CALENDAR} the number of ring slots, i.e. how many buckets
+     *                            past the head are reachable without the overflow map
+     */
+    public HeadSortedQueue(double bucketSize, double expectedRangeStart, int preAllocatedBuckets, TailStructure tailStructure) {
+        this(bucketSize, expectedRangeStart, preAllocatedBuckets, tailStructure, HeadStructure.BINARY_HEAP);
+    }
+
+    public HeadSortedQueue(double bucketSize, double expectedRangeStart, int preAllocatedBuckets, TailStructure tailStructure,
+                           HeadStructure headStructure) {
+        this(bucketSize, expectedRangeStart, preAllocatedBuckets, tailStructure, headStructure, false);
+    }
+
+    /**
+     * @param pooledBuckets whether promoted bucket containers are cleared and reused for new buckets instead of being
+     *                      dropped, in that case {@code preAllocatedBuckets} containers are allocated up front. Reused
+     *                      containers keep their capacity, so the pool holds at most
+     *                      {@code max(preAllocatedBuckets, 64)} of them and drops containers that held more than 4096
+     *                      elements.
+     */
+    public HeadSortedQueue(double bucketSize, double expectedRangeStart, int preAllocatedBuckets, TailStructure tailStructure,
+                           HeadStructure headStructure, boolean pooledBuckets) {
+        this(bucketSize, expectedRangeStart, preAllocatedBuckets, tailStructure, headStructure, BucketStructure.HASH_SET, pooledBuckets);
+    }
+
+    /**
+     * @param bucketStructure the collection of every tail bucket, {@link BucketStructure#BAG} keeps equal elements
+     *                        separately instead of once
+     */
+    public HeadSortedQueue(double bucketSize, double expectedRangeStart, int preAllocatedBuckets, TailStructure tailStructure,
+                           HeadStructure headStructure, BucketStructure bucketStructure, boolean pooledBuckets) {
+        this.bucketSize = bucketSize;
+        this.headUpperBound = expectedRangeStart + bucketSize; // assuming positive values by default
+        this.preAllocatedBuckets = preAllocatedBuckets;
+        this.tailStructure = tailStructure;
+        this.headStructure = headStructure;
+        this.bucketStructure = bucketStructure;
+
+        this.maxPooledBuckets = Math.max(preAllocatedBuckets, MIN_POOLED_BUCKETS);
+        if (pooledBuckets) {
+            this.bucketPool = new ArrayDeque<>(Math.max(preAllocatedBuckets, 16));
+            this.bucketFactory = k -> bucketPool.isEmpty() ? newBucket(0) : bucketPool.pop();
+        } else {
+            this.bucketPool = null;
+            this.bucketFactory = k -> newBucket(0);
+        }
+
+        this.headQueue = switch (headStructure) {
+            case BINARY_HEAP -> new PriorityQueue<>(bucketComparator);
+            case SORTED_ARRAY -> new SortedArrayHead<>();
+        };
+
+        this.tailMap = switch (tailStructure) {
+            case TREE_MAP -> new TreeBucketMap<>();
+            case CALENDAR -> new CalendarBucketMap<>(getBucketId(headUpperBound), preAllocatedBuckets);
+        };
 
         //pre fill the tail map with empty buckets
         //expectedRangeStart + bucketSize is the upper border of the head queue, so we step one further
         double currentIdicator = expectedRangeStart + 2 * bucketSize;
-        for (int i = 0; i < preAllocatedBuckets; i++) {
-            tailMap.putIfAbsent(getBucketId(currentIdicator), new HashSet<>());
+        for (int i = 0; i < preAllocatedBuckets && tailStructure == TailStructure.TREE_MAP; i++) {
+            tailMap.computeIfAbsent(getBucketId(currentIdicator), bucketFactory);
             currentIdicator += bucketSize;
         }
+
+        //the tree map holds its pre allocated buckets itself, they reach the pool once they are promoted
+        for (int i = 0; i < preAllocatedBuckets && pooledBuckets && tailStructure != TailStructure.TREE_MAP; i++) {
+            bucketPool.push(newBucket(0));
+        }
+    }
+
+    // expectedElements of 0 leaves the capacity at the collection's default
+    private Collection<T> newBucket(int expectedElements) {
+        return switch (bucketStructure) {
+            case HASH_SET -> expectedElements == 0 ? new HashSet<>() : new HashSet<>((int) (expectedElements / 0.75f) + 1);
+            case BAG -> expectedElements == 0 ? new ArrayBag<>() : new ArrayBag<>(expectedElements);
+        };
     }
 
 
+    /**
+     * Iterates in priority order. The head is sorted up front, every tail bucket only once the iteration reaches it.
+     */
     @Override
     public Iterator<T> iterator() {
         if (size() == 0) {
             return Collections.emptyIterator();
         }
 
-        PriorityQueue<T> acc = new PriorityQueue<>(size(), bucketComparator);
-        acc.addAll(headQueue);
-        tailMap.values().forEach(acc::addAll);
-        return acc.iterator();
+        return new OrderedIterator(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Iterates the head and the tail buckets in place, without any copying or sorting. The order is unspecified.
+     */
+    public Iterator<T> unorderedIterator() {
+        return new UnorderedIterator();
+    }
+
+    /**
+     * Splits along the head and the tail buckets, so parallel streams get one or more whole buckets per task. Like
+     * {@link #iterator()} it is sorted, every bucket is sorted once the traversal or a split reaches into it.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new BucketSpliterator(segments(), 0, size, true);
+    }
+
+    /**
+     * Like {@link #spliterator()}, but the buckets are traversed in place without sorting them. The order is
+     * unspecified.
+     */
+    public Spliterator<T> unorderedSpliterator() {
+        return new BucketSpliterator(segments(), 0, size, false);
+    }
+
+    // the head followed by the tail buckets in key order
+    private List<Collection<T>> segments() {
+        ArrayList<Collection<T>> segments = new ArrayList<>();
+        segments.add(headQueue);
+        tailMap.forEach(entry -> segments.add(entry.getValue()));
+        return segments;
+    }
+
+    private static Object[] sortedCopy(Collection<?> segment) {
+        Object[] elements = segment.toArray();
+        double[] priorities = new double[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            priorities[i] = ((Bucketable) elements[i]).priority();
+        }
+        PrioritySort.sort(priorities, elements, elements.length);
+        return elements;
     }
 
     @Override
@@ -62,6 +213,11 @@ public class HeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
 
     @Override
     public T peek() {
+        if (size == 0) {
+            return null;
+        }
+
+        refillHead();
         return headQueue.peek();
     }
 
@@ -71,17 +227,9 @@ public class HeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
             return null;
         }
 
+        refillHead();
         T polled = headQueue.poll();
 
-        if (headQueue.isEmpty() || polled == null) {
-            //if the head queue was empty or we pulled the last element, we need to refill the head queue with the next bucket
-            Map.Entry<Integer, HashSet<T>> entry = tailMap.pollFirstEntry();
-            if (entry != null) {
-                headQueue.addAll(entry.getValue());
-                headUpperBound = entry.getKey() * bucketSize;
-            }
-        }
-
         if (polled != null) {
             size--;
         }
@@ -89,28 +237,293 @@ public class HeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
         return polled;
     }
 
+    private void refillHead() {
+        //if the head queue is empty (polled or removed the last element), we need to refill it with the next non-empty bucket
+        while (headQueue.isEmpty()) {
+            Collection<T> bucket = tailMap.pollFirstBucket();
+            if (bucket == null) {
+                return;
+            }
+            if (statistics == null) {
+                headQueue.addAll(bucket);
+            } else {
+                long start = System.nanoTime();
+                headQueue.addAll(bucket);
+                statistics.recordPromotion(bucket.size(), System.nanoTime() - start);
+            }
+            recycle(bucket);
+            //everything below the upper border of the promoted bucket now belongs to the head
+            headUpperBound = Math.max(headUpperBound, (tailMap.polledBucketId() + 1.0) * bucketSize);
+            headMaximum = Math.max(headMaximum, headUpperBound);
+            if (tailMap.polledBucketId() == evictionBucketId) {
+                evictionHeap = null;
+            }
+        }
+    }
+
+    // large containers keep their capacity after clear(), so they are dropped instead of being held on to
+    private void recycle(Collection<T> bucket) {
+        if (bucketPool != null && bucketPool.size() < maxPooledBuckets && bucket.size() <= MAX_POOLED_BUCKET_SIZE) {
+            bucket.clear();
+            bucketPool.push(bucket);
+        }
+    }
+
+    /**
+     * Inserts the element. If the queue is bounded and full, an element that would land behind the last tail bucket,
+     * or at or above the largest element if there is no tail, is rejected right away, otherwise the largest element is
+     * evicted after inserting it.
+     *
+     * @return false if the element was already queued, rejected or evicted again because it was the largest one
+     */
     @Override
     public boolean offer(T element) {
         Objects.requireNonNull(element);
 
+        if (size >= maximumSize && isBehindTheLargest(element.priority())) {
+            return false;
+        }
+
+        boolean added = insert(element);
+        if (added && size > maximumSize) {
+            return !evictExcess(element);
+        }
+        return added;
+    }
+
+    private boolean insert(T element) {
         double priority = element.priority();
+        boolean toHead = priority < headUpperBound;
         boolean added;
 
-        if (priority < headUpperBound) {
+        if (toHead) {
             added = headQueue.offer(element);
+            headMaximum = Math.max(headMaximum, priority);
         } else {
             int bucket_id = getBucketId(priority);
-            Collection<T> bucket = tailMap.computeIfAbsent(bucket_id, k -> new HashSet<>());
+            Collection<T> bucket = tailMap.computeIfAbsent(bucket_id, bucketFactory);
             added = bucket.add(element);
+            lastBucketId = Math.max(lastBucketId, bucket_id);
+            if (added && evictionHeap != null && bucket_id == evictionBucketId) {
+                evictionHeap.add(element);
+            }
         }
 
         if (added) {
             size++;
+            if (statistics != null) {
+                statistics.recordInserts(toHead ? 1 : 0, toHead ? 0 : 1);
+            }
         }
 
         return added;
     }
 
+    /**
+     * Bounds the queue to at most {@code maximumSize} elements by evicting the largest ones, which are reported to
+     * the listener. Whole tail buckets are dropped while they fit into the excess, otherwise single elements are
+     * taken from the last bucket. Elements that would land behind the last bucket of a full queue are rejected by
+     * {@link #offer(Bucketable)} without being reported. {@link #addAll(Collection)} offers element by element,
+     * {@link #transferFrom(HeadSortedQueue)} evicts once at the end.
+     * <p>
+     * A single element is taken from the last bucket of size {@code b} in amortized O(log b) through a heap of that
+     * bucket, which is built in O(b log b) whenever another bucket becomes the last one. {@link BucketStructure#BAG}
+     * buckets additionally search the bucket for the element, O(b). Without a tail, offers at or above the largest
+     * element are rejected in O(1), but every other accepted offer scans the head for its largest element, O(n).
+     *
+     * @param evictionListener receives every evicted element, may be {@code null}
+     */
+    public void setMaximumSize(int maximumSize, Consumer<? super T> evictionListener) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("the maximum size needs to be positive but was " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.evictionListener = evictionListener;
+        evictExcess(null);
+    }
+
+    /**
+     * @return the maximum number of elements, {@link Integer#MAX_VALUE} if the queue is unbounded
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    // without a non-empty tail bucket every element is in the head, i.e. below headUpperBound. A stale lastBucketId
+    // or headMaximum lets the element through, evictExcess then drops it again and corrects them
+    private boolean isBehindTheLargest(double priority) {
+        if (priority >= headUpperBound) {
+            return getBucketId(priority) > lastBucketId;
+        }
+        return size == headQueue.size() && priority >= headMaximum;
+    }
+
+    private Map.Entry<Integer, Collection<T>> lastNonEmptyBucket() {
+        Map.Entry<Integer, Collection<T>> last;
+        while ((last = tailMap.lastEntry()) != null && last.getValue().isEmpty()) {
+            recycle(tailMap.remove(last.getKey()));
+        }
+        return last;
+    }
+
+    // evicts the largest elements down to the maximum size, true if the offered element was one of them
+    private boolean evictExcess(T offered) {
+        if (size <= maximumSize) {
+            return false;
+        }
+
+        boolean evictedOffered = false;
+        while (size > maximumSize) {
+            Map.Entry<Integer, Collection<T>> last = lastNonEmptyBucket();
+
+            if (last != null && last.getValue().size() <= size - maximumSize) {
+                Collection<T> bucket = tailMap.remove(last.getKey());
+                if (last.getKey() == evictionBucketId) {
+                    evictionHeap = null;
+                }
+                size -= bucket.size();
+                for (T element : bucket) {
+                    evictedOffered |= evicted(element, offered);
+                }
+                recycle(bucket);
+                continue;
+            }
+
+            T largest = last == null ? removeLargestOfHead() : removeLargestOf(last.getKey(), last.getValue());
+            size--;
+            evictedOffered |= evicted(largest, offered);
+        }
+
+        Map.Entry<Integer, Collection<T>> last = lastNonEmptyBucket();
+        lastBucketId = last == null ? Integer.MIN_VALUE : last.getKey();
+        return evictedOffered;
+    }
+
+    private T removeLargestOf(int bucketId, Collection<T> bucket) {
+        //rebuilding once the heap holds more removed than queued elements keeps it in O(b)
+        if (evictionHeap == null || evictionBucketId != bucketId || evictionHeap.size() > 2 * bucket.size()) {
+            evictionHeap = new PriorityQueue<>(bucket.size(), evictionComparator);
+            evictionHeap.addAll(bucket);
+            evictionBucketId = bucketId;
+        }
+
+        //every element of the bucket is in the heap, so this ends at the largest one still queued
+        T largest;
+        do {
+            largest = evictionHeap.poll();
+        } while (!bucket.remove(largest));
+        return largest;
+    }
+
+    // finds the second largest priority in the same pass, which is the exact maximum afterwards
+    private T removeLargestOfHead() {
+        T largest = null;
+        double second = Double.NEGATIVE_INFINITY;
+        for (T element : headQueue) {
+            if (largest == null || element.priority() > largest.priority()) {
+                if (largest != null) {
+                    second = largest.priority();
+                }
+                largest = element;
+            } else {
+                second = Math.max(second, element.priority());
+            }
+        }
+        headQueue.remove(largest);
+        headMaximum = second;
+        return largest;
+    }
+
+    private boolean evicted(T element, T offered) {
+        if (element == offered) {
+            return true;
+        }
+        if (evictionListener != null) {
+            evictionListener.accept(element);
+        }
+        return false;
+    }
+
+    // same routing as offer, but the tail elements are grouped by bucket id first so that every bucket is looked up once
+    boolean offerBatch(List<? extends T> elements) {
+        int headInserts = 0;
+        int tailInserts = 0;
+
+        //bucket id in the upper, index into elements in the lower half, sorting them groups the elements by bucket
+        long[] tailKeys = new long[elements.size()];
+        int tailCount = 0;
+
+        for (int i = 0; i < elements.size(); i++) {
+            T element = Objects.requireNonNull(elements.get(i));
+            double priority = element.priority();
+
+            if (priority < headUpperBound) {
+                if (headQueue.offer(element)) {
+                    headInserts++;
+                    headMaximum = Math.max(headMaximum, priority);
+                }
+            } else {
+                tailKeys[tailCount++] = ((long) getBucketId(priority) << 32) | i;
+            }
+        }
+
+        Arrays.sort(tailKeys, 0, tailCount);
+        if (tailCount > 0) {
+            lastBucketId = Math.max(lastBucketId, (int) (tailKeys[tailCount - 1] >> 32));
+            evictionHeap = null;
+        }
+
+        Collection<T> bucket = null;
+        int currentBucketId = 0;
+        for (int i = 0; i < tailCount; i++) {
+            int bucket_id = (int) (tailKeys[i] >> 32);
+            if (bucket == null || bucket_id != currentBucketId) {
+                bucket = tailMap.computeIfAbsent(bucket_id, bucketFactory);
+                currentBucketId = bucket_id;
+            }
+            if (bucket.add(elements.get((int) tailKeys[i]))) {
+                tailInserts++;
+            }
+        }
+
+        size += headInserts + tailInserts;
+        if (statistics != null) {
+            statistics.recordInserts(headInserts, tailInserts);
+        }
+        return headInserts + tailInserts > 0;
+    }
+
+    /**
+     * Starts recording {@link QueueStatistics}. Until this is called, the queue does not spend any work on them.
+     *
+     * @return the statistics of this queue, the same object on every call
+     */
+    public QueueStatistics enableStatistics() {
+        if (statistics == null) {
+            statistics = new QueueStatistics(this::headSize, this::forEachBucketSize);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return the statistics of this queue or {@code null} if they were never enabled
+     */
+    public QueueStatistics getStatistics() {
+        return statistics;
+    }
+
+    int pooledBucketCount() {
+        return bucketPool == null ? 0 : bucketPool.size();
+    }
+
+    int headSize() {
+        return headQueue.size();
+    }
+
+    void forEachBucketSize(IntConsumer action) {
+        tailMap.forEach(entry -> action.accept(entry.getValue().size()));
+    }
+
 
     @Override
     public boolean remove(Object element) {
@@ -152,14 +565,42 @@ public class HeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
     @Override
     public boolean retainAll(Collection<?> c) {
         Objects.requireNonNull(c);
+        return removeIf(element -> !c.contains(element));
+    }
 
-        boolean changed = false;
-        for (T element : this) {
-            if (!c.contains(element)) {
-                changed |= this.remove(element);
-            }
-        }
-        return changed;
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        return removeIf(filter, false);
+    }
+
+    /**
+     * Like {@link #removeIf(Predicate)}, but the tail buckets are filtered in parallel on the common fork-join pool.
+     * The filter is called from several threads at once.
+     */
+    public boolean parallelRemoveIf(Predicate<? super T> filter) {
+        return removeIf(filter, true);
+    }
+
+    // bucket by bucket, every bucket uses the bulk removal of its own collection
+    private boolean removeIf(Predicate<? super T> filter, boolean parallel) {
+        Objects.requireNonNull(filter);
+
+        int removed = removeFrom(headQueue, filter);
+
+        List<Collection<T>> buckets = new ArrayList<>();
+        tailMap.forEach(entry -> buckets.add(entry.getValue()));
+        removed += (parallel ? buckets.parallelStream() : buckets.stream())
+                .mapToInt(bucket -> removeFrom(bucket, filter))
+                .sum();
+
+        size -= removed;
+        return removed > 0;
+    }
+
+    private static <T> int removeFrom(Collection<T> collection, Predicate<? super T> filter) {
+        int before = collection.size();
+        collection.removeIf(filter);
+        return before - collection.size();
     }
 
     @Override
@@ -167,6 +608,379 @@ public class HeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
         return this.offer(element);
     }
 
+    /**
+     * Inserts all elements, touching every tail bucket only once instead of once per element. A bounded queue offers
+     * them one by one.
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException("cannot add a queue to itself");
+        }
+        if (maximumSize != Integer.MAX_VALUE) {
+            return super.addAll(c);
+        }
+
+        if (c instanceof List<? extends T> list && c instanceof RandomAccess) {
+            return offerBatch(list);
+        }
+        return offerBatch(new ArrayList<>(c));
+    }
+
+    /**
+     * Removes and returns up to {@code n} of the smallest elements, in priority order.
+     */
+    public List<T> pollBatch(int n) {
+        ArrayList<T> batch = new ArrayList<>(Math.max(0, Math.min(n, size)));
+        drainTo(batch, n);
+        return batch;
+    }
+
+    /**
+     * Moves up to {@code maxElements} of the smallest elements into {@code c}, in priority order. Whenever the whole
+     * head is taken it is sorted once instead of being polled element by element.
+     *
+     * @return the number of elements moved
+     */
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException("cannot drain a queue into itself");
+        }
+
+        int drained = 0;
+        while (drained < maxElements && size > 0) {
+            refillHead();
+
+            if (maxElements - drained >= headQueue.size()) {
+                //every element in the head is smaller than any element in the tail
+                @SuppressWarnings("unchecked")
+                T[] head = (T[]) headQueue.toArray(new Bucketable[0]);
+                Arrays.sort(head, bucketComparator);
+                headQueue.clear();
+                c.addAll(Arrays.asList(head));
+                drained += head.length;
+                size -= head.length;
+            } else {
+                while (drained < maxElements) {
+                    c.add(headQueue.poll());
+                    drained++;
+                    size--;
+                }
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Moves all elements of {@code other} into this queue and leaves {@code other} empty. Tail buckets of {@code other}
+     * above the head of this queue are taken over as a whole, or merged with the bucket of the same id by adding the
+     * smaller one to the larger one. Only the elements of the other head and of buckets reaching into this head are
+     * offered one by one, so the cost grows with the number of buckets rather than the number of elements. The statistics
+     * of this queue count every moved element as an insert.
+     *
+     * @return the number of elements this queue grew by, equal elements in the same bucket are merged and a bounded
+     * queue evicts its excess afterwards
+     * @throws IllegalArgumentException if the bucket sizes differ
+     */
+    public int transferFrom(HeadSortedQueue<T> other) {
+        Objects.requireNonNull(other);
+        if (other == this) {
+            throw new IllegalArgumentException("cannot transfer a queue into itself");
+        }
+        if (Double.compare(other.bucketSize, bucketSize) != 0) {
+            throw new IllegalArgumentException("the bucket sizes need to match but were " + bucketSize + " and " + other.bucketSize);
+        }
+
+        int before = size;
+        int bucketInserts = 0;
+
+        for (T element : other.headQueue) {
+            insert(element);
+        }
+        other.headQueue.clear();
+
+        Collection<T> bucket;
+        while ((bucket = other.tailMap.pollFirstBucket()) != null) {
+            int bucketId = other.tailMap.polledBucketId();
+
+            if (bucketId * bucketSize < headUpperBound) {
+                //reaches into the head of this queue
+                for (T element : bucket) {
+                    insert(element);
+                }
+                continue;
+            }
+
+            if (bucketStructure != other.bucketStructure) {
+                Collection<T> converted = newBucket(bucket.size());
+                converted.addAll(bucket);
+                bucket = converted;
+            }
+
+            Collection<T> existing = tailMap.get(bucketId);
+            int sizeBefore = size;
+            lastBucketId = Math.max(lastBucketId, bucketId);
+            if (existing == null) {
+                tailMap.put(bucketId, bucket);
+                size += bucket.size();
+            } else if (existing.size() >= bucket.size()) {
+                int existingSize = existing.size();
+                existing.addAll(bucket);
+                size += existing.size() - existingSize;
+            } else {
+                int existingSize = existing.size();
+                bucket.addAll(existing);
+                tailMap.put(bucketId, bucket);
+                recycle(existing);
+                size += bucket.size() - existingSize;
+            }
+            bucketInserts += size - sizeBefore;
+        }
+        other.size = 0;
+        evictionHeap = null; // whole buckets were merged without it
+        if (statistics != null) {
+            statistics.recordInserts(0, bucketInserts);
+        }
+        evictExcess(null);
+
+        return size - before;
+    }
+
+    /**
+     * Moves every element with a priority of at least {@code from} into a new queue with the same configuration and
+     * returns it. Tail buckets above the bucket of {@code from} change owner as a whole. Only that bucket and, if
+     * {@code from} lies below the head border, the head are scanned.
+     * <p>
+     * The new queue takes over the maximum size and the eviction listener, and records its own statistics from the
+     * split on if this queue records them. The moved elements count as its inserts.
+     */
+    public HeadSortedQueue<T> split(double from) {
+        if (Double.isNaN(from)) {
+            throw new IllegalArgumentException("the split priority must not be NaN");
+        }
+
+        HeadSortedQueue<T> upper = new HeadSortedQueue<>(bucketSize, headUpperBound - bucketSize, preAllocatedBuckets,
+                tailStructure, headStructure, bucketStructure, bucketPool != null);
+        upper.headUpperBound = headUpperBound; // exact, the subtraction above may round
+        //the upper part never holds more than this queue, so nothing is evicted while it is filled
+        upper.maximumSize = maximumSize;
+        upper.evictionListener = evictionListener;
+        if (statistics != null) {
+            upper.enableStatistics();
+        }
+
+        int splitId = getBucketId(from);
+        List<Integer> movedIds = new ArrayList<>();
+        for (Map.Entry<Integer, Collection<T>> entry : tailMap) {
+            if (entry.getKey() > splitId) {
+                movedIds.add(entry.getKey());
+            }
+        }
+        for (int bucketId : movedIds) {
+            Collection<T> bucket = tailMap.remove(bucketId);
+            size -= bucket.size();
+            upper.size += bucket.size();
+            Collection<T> previous = upper.tailMap.put(bucketId, bucket);
+            upper.lastBucketId = Math.max(upper.lastBucketId, bucketId);
+            if (previous != null) {
+                upper.recycle(previous); // an empty pre allocated bucket
+            }
+            if (upper.statistics != null) {
+                upper.statistics.recordInserts(0, bucket.size());
+            }
+        }
+
+        List<T> moving = new ArrayList<>();
+        Predicate<T> above = element -> element.priority() >= from && moving.add(element);
+        Collection<T> boundary = tailMap.get(splitId);
+        if (boundary != null) {
+            boundary.removeIf(above);
+        }
+        if (from < headUpperBound) {
+            headQueue.removeIf(above);
+        }
+        size -= moving.size();
+        upper.addAll(moving);
+
+        return upper;
+    }
+
+    /**
+     * Removes and returns every element with a priority below {@code threshold}, in priority order. Tail buckets that
+     * lie completely below the threshold are detached as a whole, only the bucket of the threshold and the head are
+     * scanned.
+     */
+    public List<T> pollAllBelow(double threshold) {
+        checkRange(Double.NEGATIVE_INFINITY, threshold);
+
+        //the head and the buckets follow each other in priority order, so sorting them one by one is enough
+        ArrayList<T> polled = new ArrayList<>();
+        int sizeBefore = size;
+        if (threshold >= headUpperBound) {
+            appendSorted(polled, headQueue);
+            headQueue.clear();
+        } else {
+            appendSorted(polled, removeBelow(headQueue, threshold));
+        }
+
+        int thresholdId = getBucketId(threshold);
+        List<Map.Entry<Integer, Collection<T>>> buckets = new ArrayList<>();
+        tailMap.iterator(Integer.MIN_VALUE, thresholdId).forEachRemaining(buckets::add);
+        for (Map.Entry<Integer, Collection<T>> entry : buckets) {
+            Collection<T> bucket = entry.getValue();
+            if (entry.getKey() < thresholdId) {
+                tailMap.remove(entry.getKey());
+                appendSorted(polled, bucket);
+                recycle(bucket);
+            } else {
+                appendSorted(polled, removeBelow(bucket, threshold));
+            }
+        }
+
+        size = sizeBefore - polled.size();
+        return polled;
+    }
+
+    private List<T> removeBelow(Collection<T> elements, double threshold) {
+        List<T> removed = new ArrayList<>();
+        elements.removeIf(element -> element.priority() < threshold && removed.add(element));
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void appendSorted(List<T> target, Collection<T> segment) {
+        target.addAll((List<T>) (List<?>) Arrays.asList(sortedCopy(segment)));
+    }
+
+    /**
+     * Removes every element with a priority in {@code [from, to)}. Tail buckets that lie completely inside the range
+     * are detached in O(1) each, only the two boundary buckets and, if the range reaches below the head border, the
+     * head are scanned.
+     *
+     * @return the number of removed elements
+     */
+    public int removeRange(double from, double to) {
+        checkRange(from, to);
+        return removeRange(from, to, null);
+    }
+
+    private int removeRange(double from, double to, Consumer<? super T> action) {
+        Predicate<T> filter = element -> {
+            if (!inRange(element.priority(), from, to)) {
+                return false;
+            }
+            if (action != null) {
+                action.accept(element);
+            }
+            return true;
+        };
+
+        int removed = 0;
+        if (from < headUpperBound) {
+            removed += removeFrom(headQueue, filter);
+        }
+
+        //collected first, the tail map can not be changed while it is iterated
+        int fromId = getBucketId(from);
+        int toId = getBucketId(to);
+        List<Map.Entry<Integer, Collection<T>>> buckets = new ArrayList<>();
+        tailMap.iterator(fromId, toId).forEachRemaining(buckets::add);
+
+        for (Map.Entry<Integer, Collection<T>> entry : buckets) {
+            int bucketId = entry.getKey();
+            Collection<T> bucket = entry.getValue();
+            if (bucketId > fromId && bucketId < toId) {
+                tailMap.remove(bucketId);
+                if (action != null) {
+                    bucket.forEach(action);
+                }
+                removed += bucket.size();
+                recycle(bucket);
+            } else {
+                removed += removeFrom(bucket, filter);
+            }
+        }
+
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * Counts the elements with a priority in {@code [from, to)}. Tail buckets that lie completely inside the range are
+     * counted in O(1) each, only the boundary buckets and possibly the head are scanned.
+     */
+    public int countInRange(double from, double to) {
+        checkRange(from, to);
+
+        int count = 0;
+        if (from < headUpperBound) {
+            count += countInRange(headQueue, from, to);
+        }
+
+        int fromId = getBucketId(from);
+        int toId = getBucketId(to);
+        Iterator<Map.Entry<Integer, Collection<T>>> buckets = tailMap.iterator(fromId, toId);
+        while (buckets.hasNext()) {
+            Map.Entry<Integer, Collection<T>> entry = buckets.next();
+            if (entry.getKey() > fromId && entry.getKey() < toId) {
+                count += entry.getValue().size();
+            } else {
+                count += countInRange(entry.getValue(), from, to);
+            }
+        }
+        return count;
+    }
+
+    private static int countInRange(Collection<? extends Bucketable> elements, double from, double to) {
+        int count = 0;
+        for (Bucketable element : elements) {
+            if (inRange(element.priority(), from, to)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Live view of the elements with a priority below {@code to}, see {@link #rangeView(double, double)}.
+     */
+    public Collection<T> headView(double to) {
+        return rangeView(Double.NEGATIVE_INFINITY, to);
+    }
+
+    /**
+     * Live view of the elements with a priority of at least {@code from}, see {@link #rangeView(double, double)}.
+     */
+    public Collection<T> tailView(double from) {
+        return rangeView(from, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Live view of the elements with a priority in {@code [from, to)}. It iterates in priority order, its size,
+     * removal and clearing use the bucket index like {@link #countInRange(double, double)} and
+     * {@link #removeRange(double, double)}. Elements can not be added through the view.
+     */
+    public Collection<T> rangeView(double from, double to) {
+        checkRange(from, to);
+        return new RangeView(from, to);
+    }
+
+    private static void checkRange(double from, double to) {
+        if (Double.isNaN(from) || Double.isNaN(to)) {
+            throw new IllegalArgumentException("the range bounds must not be NaN");
+        }
+        if (from > to) {
+            throw new IllegalArgumentException("the range start " + from + " is above its end " + to);
+        }
+    }
+
+    // infinite bounds are open, so that the unbounded range also holds infinite and NaN priorities
+    private static boolean inRange(double priority, double from, double to) {
+        return (from == Double.NEGATIVE_INFINITY || priority >= from) && (to == Double.POSITIVE_INFINITY || priority < to);
+    }
+
     @Override
     public boolean contains(Object o) {
         if (!(o instanceof Bucketable bucketable)) {
@@ -184,8 +998,378 @@ public class HeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
         }
     }
 
+    /**
+     * Writes the configuration including the maximum size, the head and every non-empty tail bucket to the channel,
+     * the elements through the codec. The eviction listener and the statistics are not written. The channel is not
+     * closed.
+     *
+     * @see #readSnapshot(ReadableByteChannel, ElementCodec)
+     */
+    public void writeSnapshot(WritableByteChannel channel, ElementCodec<? super T> codec) throws IOException {
+        Objects.requireNonNull(codec);
+        SnapshotChannels.Writer out = new SnapshotChannels.Writer(channel);
+
+        out.putInt(SNAPSHOT_MAGIC);
+        out.putInt(SNAPSHOT_VERSION);
+        out.putDouble(bucketSize);
+        out.putDouble(headUpperBound);
+        out.putInt(preAllocatedBuckets);
+        out.putInt(tailStructure.ordinal());
+        out.putInt(headStructure.ordinal());
+        out.putInt(bucketStructure.ordinal());
+        out.putInt(bucketPool != null ? 1 : 0);
+        out.putInt(maximumSize);
+
+        out.putInt(headQueue.size());
+        for (T element : headQueue) {
+            out.putElement(codec, element);
+        }
+
+        int bucketCount = 0;
+        for (Map.Entry<Integer, Collection<T>> entry : tailMap) {
+            if (!entry.getValue().isEmpty()) {
+                bucketCount++;
+            }
+        }
+        out.putInt(bucketCount);
+        for (Map.Entry<Integer, Collection<T>> entry : tailMap) {
+            Collection<T> bucket = entry.getValue();
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            out.putInt(entry.getKey());
+            out.putInt(bucket.size());
+            for (T element : bucket) {
+                out.putElement(codec, element);
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Restores a queue written by {@link #writeSnapshot(WritableByteChannel, ElementCodec)}, including its bucket size,
+     * head border, structures and maximum size. The buckets are rebuilt directly instead of offering every element. A
+     * bounded queue is restored without an eviction listener, see {@link #setMaximumSize(int, Consumer)} to set one.
+     *
+     * @throws IOException if the channel does not contain a complete snapshot
+     */
+    public static <T extends Bucketable> HeadSortedQueue<T> readSnapshot(ReadableByteChannel channel, ElementCodec<T> codec) throws IOException {
+        Objects.requireNonNull(codec);
+        SnapshotChannels.Reader in = new SnapshotChannels.Reader(channel);
+
+        if (in.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("not a HeadSortedQueue snapshot");
+        }
+        int version = in.getInt();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+
+        double bucketSize = in.getDouble();
+        double headUpperBound = in.getDouble();
+        int preAllocatedBuckets = in.getInt();
+        TailStructure tailStructure = readEnum(TailStructure.values(), in.getInt());
+        HeadStructure headStructure = readEnum(HeadStructure.values(), in.getInt());
+        BucketStructure bucketStructure = readEnum(BucketStructure.values(), in.getInt());
+        boolean pooledBuckets = in.getInt() != 0;
+        int maximumSize = in.getInt();
+        if (maximumSize <= 0) {
+            throw new IOException("corrupt snapshot, non-positive maximum size " + maximumSize);
+        }
+
+        HeadSortedQueue<T> queue = new HeadSortedQueue<>(bucketSize, headUpperBound - bucketSize, preAllocatedBuckets,
+                tailStructure, headStructure, bucketStructure, pooledBuckets);
+        queue.headUpperBound = headUpperBound; // exact, the subtraction above may round
+        queue.maximumSize = maximumSize;
+
+        int headSize = readCount(in, "head size");
+        ArrayList<T> head = new ArrayList<>(Math.min(headSize, 1 << 20));
+        for (int i = 0; i < headSize; i++) {
+            head.add(in.getElement(codec));
+        }
+        queue.headQueue.addAll(head);
+        queue.headMaximum = headUpperBound;
+        queue.size = queue.headQueue.size();
+
+        int bucketCount = readCount(in, "bucket count");
+        for (int b = 0; b < bucketCount; b++) {
+            int bucketId = in.getInt();
+            int count = readCount(in, "bucket size");
+            Collection<T> bucket = queue.tailMap.computeIfAbsent(bucketId, k -> queue.newBucket(Math.min(count, 1 << 20)));
+            queue.lastBucketId = Math.max(queue.lastBucketId, bucketId);
+            for (int i = 0; i < count; i++) {
+                bucket.add(in.getElement(codec));
+            }
+            queue.size += bucket.size();
+        }
+
+        return queue;
+    }
+
+    private static int readCount(SnapshotChannels.Reader in, String name) throws IOException {
+        int count = in.getInt();
+        if (count < 0) {
+            throw new IOException("corrupt snapshot, negative " + name + " " + count);
+        }
+        return count;
+    }
+
+    private static <E extends Enum<E>> E readEnum(E[] values, int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("corrupt snapshot, unknown " + values[0].getDeclaringClass().getSimpleName() + " " + ordinal);
+        }
+        return values[ordinal];
+    }
+
     private int getBucketId(double indicator) {
-        return (int) (indicator / bucketSize);
+        //floor instead of truncation, otherwise bucket 0 would cover (-bucketSize, bucketSize)
+        return (int) Math.floor(indicator / bucketSize);
+    }
+
+    // sorts a copy of one segment (the head or a single bucket) at a time, removal goes through the queue
+    private final class OrderedIterator implements Iterator<T> {
+        private final double from;
+        private final double to;
+        private final Iterator<Map.Entry<Integer, Collection<T>>> buckets;
+        private Object[] segment = new Object[0];
+        private int segmentSize = 0;
+        private int cursor = 0;
+        private T last;
+
+        private OrderedIterator(double from, double to) {
+            this.from = from;
+            this.to = to;
+            this.buckets = tailMap.iterator(getBucketId(from), getBucketId(to));
+            if (from < headUpperBound) {
+                load(headQueue);
+            }
+        }
+
+        private void load(Collection<T> elements) {
+            segment = sortedCopy(elements);
+            segmentSize = segment.length;
+            cursor = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                while (cursor == segmentSize) {
+                    if (!buckets.hasNext()) {
+                        return false;
+                    }
+                    load(buckets.next().getValue());
+                }
+                if (inRange(((Bucketable) segment[cursor]).priority(), from, to)) {
+                    return true;
+                }
+                cursor++;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = (T) segment[cursor++];
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            HeadSortedQueue.this.remove(last);
+            last = null;
+        }
+    }
+
+    private final class RangeView extends AbstractCollection<T> {
+        private final double from;
+        private final double to;
+
+        private RangeView(double from, double to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new OrderedIterator(from, to);
+        }
+
+        @Override
+        public int size() {
+            return countInRange(from, to);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Bucketable bucketable && inRange(bucketable.priority(), from, to)
+                    && HeadSortedQueue.this.contains(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof Bucketable bucketable && inRange(bucketable.priority(), from, to)
+                    && HeadSortedQueue.this.remove(o);
+        }
+
+        @Override
+        public void clear() {
+            removeRange(from, to, null);
+        }
+    }
+
+    // covers the segments [index, fence), the one currently traversed or split is held in current
+    private final class BucketSpliterator implements Spliterator<T> {
+        private final List<Collection<T>> segments;
+        private final boolean sorted;
+        private final int fence;
+        private int index;
+        private long remaining; // elements in the segments that are not opened yet
+        private Spliterator<T> current;
+
+        private BucketSpliterator(List<Collection<T>> segments, int index, long remaining, boolean sorted) {
+            this(segments, index, segments.size(), remaining, sorted);
+        }
+
+        private BucketSpliterator(List<Collection<T>> segments, int index, int fence, long remaining, boolean sorted) {
+            this.segments = segments;
+            this.index = index;
+            this.fence = fence;
+            this.remaining = remaining;
+            this.sorted = sorted;
+        }
+
+        private boolean openNext() {
+            if (index == fence) {
+                return false;
+            }
+            Collection<T> segment = segments.get(index++);
+            remaining -= segment.size();
+            current = sorted
+                    ? Spliterators.spliterator(sortedCopy(segment), Spliterator.ORDERED | Spliterator.NONNULL)
+                    : segment.spliterator();
+            return true;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            do {
+                if (current != null && current.tryAdvance(action)) {
+                    return true;
+                }
+            } while (openNext());
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            do {
+                if (current != null) {
+                    current.forEachRemaining(action);
+                }
+            } while (openNext());
+            current = null;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (current != null) {
+                if (index < fence) {
+                    //hand out the rest of the open segment, it comes before all others
+                    Spliterator<T> prefix = current;
+                    current = null;
+                    return prefix;
+                }
+                return current.trySplit();
+            }
+
+            if (fence - index > 1) {
+                //split the segments by element count, each half gets at least one segment
+                int mid = index + 1;
+                long prefixSize = segments.get(index).size();
+                while (mid < fence - 1 && prefixSize + segments.get(mid).size() <= remaining / 2) {
+                    prefixSize += segments.get(mid++).size();
+                }
+                BucketSpliterator prefix = new BucketSpliterator(segments, index, mid, prefixSize, sorted);
+                index = mid;
+                remaining -= prefixSize;
+                return prefix;
+            }
+
+            //a single segment is left, split within it
+            return openNext() ? current.trySplit() : null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining + (current != null ? current.estimateSize() : 0);
+        }
+
+        @Override
+        public int characteristics() {
+            int characteristics = Spliterator.NONNULL;
+            if (sorted) {
+                characteristics |= Spliterator.ORDERED | Spliterator.SORTED;
+            }
+            if (current == null || current.hasCharacteristics(Spliterator.SIZED)) {
+                characteristics |= Spliterator.SIZED;
+            }
+            return characteristics;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            if (!sorted) {
+                throw new IllegalStateException();
+            }
+            return bucketComparator;
+        }
+    }
+
+    // walks the live head and bucket collections, removal goes through their own iterators
+    private final class UnorderedIterator implements Iterator<T> {
+        private final Iterator<Map.Entry<Integer, Collection<T>>> buckets = tailMap.iterator();
+        private Iterator<T> current = headQueue.iterator();
+        private Iterator<T> lastReturnedFrom;
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (!buckets.hasNext()) {
+                    return false;
+                }
+                current = buckets.next().getValue().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturnedFrom = current;
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturnedFrom == null) {
+                throw new IllegalStateException();
+            }
+            lastReturnedFrom.remove();
+            lastReturnedFrom = null;
+            size--;
+        }
     }
 
 
@@ -0,0 +1,420 @@
+package io.github.litschiw.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ScheduledExecutorService} that keeps its pending tasks in an {@link IndexedHeadSortedQueue} keyed by
+ * deadline, like a hashed timer wheel with the bucket size as tick.
+ * <p>
+ * A single timer thread wakes up at the end of every tick that holds due tasks and hands all of them to the
+ * executor, so tasks never run before their delay but may run up to one tick late. Tasks with deadlines in the same
+ * tick run in no particular order. Every task keeps the handle of its queue entry, so a cancelled task is removed
+ * right away, in O(1) from its tail bucket or in O(log n) from the head.
+ * <p>
+ * Like {@link ScheduledThreadPoolExecutor}, {@link #shutdown()} cancels the periodic tasks but still runs the
+ * pending delayed ones. The executor the tasks are handed to is not shut down with this scheduler.
+ */
+public class HeadSortedScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+    // longer delays are clamped so that deadlines do not overflow
+    private static final long MAX_DELAY = Long.MAX_VALUE >> 2;
+
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    private static final AtomicInteger timerCount = new AtomicInteger();
+
+    private final long tickNanos;
+    private final long origin = System.nanoTime();
+    private final Executor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+    private final IndexedHeadSortedQueue<ScheduledTask<?>> queue;
+
+    private int runState = RUNNING;
+    private boolean timerExited = false;
+    private int running = 0; // tasks handed to the executor that did not finish yet
+
+    /**
+     * Runs the tasks directly on the timer thread, so they should be short.
+     */
+    public HeadSortedScheduledExecutor(long tick, TimeUnit unit) {
+        this(tick, unit, Runnable::run);
+    }
+
+    /**
+     * @param executor runs the due tasks, e.g. a thread pool or a virtual thread per task executor
+     */
+    public HeadSortedScheduledExecutor(long tick, TimeUnit unit, Executor executor) {
+        this.tickNanos = unit.toNanos(tick);
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("the tick needs to be positive but was " + tick + " " + unit);
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.queue = new IndexedHeadSortedQueue<>(tickNanos);
+
+        Thread timer = new Thread(this::runTimer, "head-sorted-scheduler-" + timerCount.incrementAndGet());
+        timer.start();
+    }
+
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        Objects.requireNonNull(command);
+        return enqueue(new ScheduledTask<Void>(command, null, deadline(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        Objects.requireNonNull(callable);
+        return enqueue(new ScheduledTask<>(callable, deadline(delay, unit)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        Objects.requireNonNull(command);
+        if (period <= 0) {
+            throw new IllegalArgumentException("the period needs to be positive but was " + period);
+        }
+        return enqueue(new ScheduledTask<Void>(command, null, deadline(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        Objects.requireNonNull(command);
+        if (delay <= 0) {
+            throw new IllegalArgumentException("the delay needs to be positive but was " + delay);
+        }
+        return enqueue(new ScheduledTask<Void>(command, null, deadline(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        return schedule(Executors.callable(task, result), 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of scheduled tasks that are not yet due, cancelled tasks are not counted
+     */
+    public int getPendingTaskCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long now() {
+        return System.nanoTime() - origin;
+    }
+
+    private long deadline(long delay, TimeUnit unit) {
+        return now() + Math.min(Math.max(0, unit.toNanos(delay)), MAX_DELAY);
+    }
+
+    private <V> ScheduledTask<V> enqueue(ScheduledTask<V> task) {
+        lock.lock();
+        try {
+            if (runState != RUNNING) {
+                throw new RejectedExecutionException("the scheduler is shut down");
+            }
+            addLocked(task);
+        } finally {
+            lock.unlock();
+        }
+        return task;
+    }
+
+    private void addLocked(ScheduledTask<?> task) {
+        task.handle = queue.offer(task, task.deadline);
+        //only a new earliest task can move the wake up time forward
+        if (queue.peek() == task.handle) {
+            changed.signal();
+        }
+    }
+
+    private void reschedule(ScheduledTask<?> task, long deadline) {
+        lock.lock();
+        try {
+            if (runState != RUNNING) {
+                task.cancel(false);
+            } else if (!task.isCancelled()) {
+                //a cancel after this check finds the task in the queue and removes it again
+                task.deadline = deadline;
+                addLocked(task);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void cancelled(ScheduledTask<?> task) {
+        lock.lock();
+        try {
+            if (task.handle != null && queue.remove(task.handle)) {
+                tryTerminate();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runTimer() {
+        ArrayList<ScheduledTask<?>> due = new ArrayList<>();
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    if (!awaitDue(due)) {
+                        return;
+                    }
+                    running += due.size();
+                } finally {
+                    lock.unlock();
+                }
+
+                for (ScheduledTask<?> task : due) {
+                    dispatch(task);
+                }
+                due.clear();
+            }
+        } finally {
+            lock.lock();
+            try {
+                timerExited = true;
+                tryTerminate();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // waits for the end of the next tick with due tasks and moves them into due, false once the timer has to stop
+    private boolean awaitDue(List<ScheduledTask<?>> due) {
+        while (true) {
+            if (runState == STOP || (runState == SHUTDOWN && queue.isEmpty())) {
+                return false;
+            }
+
+            IndexedHeadSortedQueue.Handle<ScheduledTask<?>> first = queue.peek();
+            long now = now();
+            try {
+                if (first == null) {
+                    changed.await();
+                    continue;
+                }
+                long tickEnd = Math.floorDiv(first.element().deadline + tickNanos - 1, tickNanos) * tickNanos;
+                if (tickEnd > now) {
+                    changed.awaitNanos(tickEnd - now);
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                continue; // only the run state decides when the timer stops
+            }
+
+            while (first != null && first.element().deadline <= now) {
+                due.add(queue.poll().element());
+                first = queue.peek();
+            }
+            return true;
+        }
+    }
+
+    private void dispatch(ScheduledTask<?> task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            task.cancel(false);
+            finished();
+        }
+    }
+
+    private void finished() {
+        lock.lock();
+        try {
+            running--;
+            tryTerminate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void tryTerminate() {
+        if (runState != RUNNING && queue.isEmpty()) {
+            changed.signal(); // lets the timer exit
+        }
+        if (timerExited && running == 0) {
+            terminated.signalAll();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            if (runState != RUNNING) {
+                return;
+            }
+            runState = SHUTDOWN;
+
+            List<ScheduledTask<?>> periodic = new ArrayList<>();
+            queue.removeIf(handle -> handle.element().isPeriodic() && periodic.add(handle.element()));
+            for (ScheduledTask<?> task : periodic) {
+                task.cancel(false);
+            }
+            changed.signal();
+            tryTerminate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the timer and returns the pending tasks without cancelling them. Tasks that were already handed to the
+     * executor are not interrupted.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        lock.lock();
+        try {
+            runState = STOP;
+            List<Runnable> pending = new ArrayList<>(queue.size());
+            for (IndexedHeadSortedQueue.Handle<ScheduledTask<?>> handle : queue) {
+                pending.add(handle.element());
+            }
+            queue.clear();
+            changed.signal();
+            tryTerminate();
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return runState != RUNNING;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return timerExited && running == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!(timerExited && running == 0)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final class ScheduledTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        private volatile long deadline;
+        private final long period; // positive for a fixed rate, negative for a fixed delay, 0 for a single run
+
+        // the entry of the latest run in the queue, guarded by the lock
+        private IndexedHeadSortedQueue.Handle<ScheduledTask<?>> handle;
+
+        private ScheduledTask(Runnable runnable, V result, long deadline, long period) {
+            super(runnable, result);
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        private ScheduledTask(Callable<V> callable, long deadline) {
+            super(callable);
+            this.deadline = deadline;
+            this.period = 0;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - now(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            if (other instanceof ScheduledTask<?> task) {
+                return Long.compare(deadline, task.deadline);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (super.runAndReset()) {
+                reschedule(this, period > 0 ? deadline + period : now() - period);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                cancelled(this);
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.litschiw.util;
+
+/**
+ * Data structure that holds the head of a {@link HeadSortedQueue}, i.e. the elements of the promoted bucket.
+ */
+public enum HeadStructure {
+    /**
+     * A {@link java.util.PriorityQueue}: every promoted element is sifted into a binary heap and every poll pays a
+     * sift-down.
+     */
+    BINARY_HEAP,
+    /**
+     * A promoted bucket is radix sorted once on its priorities and polled by advancing an index. Inserts into the head
+     * range go to a small side heap that is merged on poll, so this suits workloads where almost all inserts land in
+     * the tail.
+     */
+    SORTED_ARRAY
+}
@@ -0,0 +1,389 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+
+/**
+ * {@link HeadSortedQueue} variant for workloads that change priorities of queued elements, e.g. Dijkstra style
+ * searches.
+ * <p>
+ * Elements are queued as {@link Handle}s that carry their own, mutable priority. Every handle knows its position, the
+ * head is an indexed binary heap and the tail buckets are plain arrays, so {@link #remove(Object)} of a handle takes
+ * O(log n) in the head and O(1) in the tail instead of a linear scan, and
+ * {@link #updatePriority(Handle, double)} moves a handle in place, within the head, within a bucket or between the two.
+ */
+public class IndexedHeadSortedQueue<E> extends AbstractQueue<IndexedHeadSortedQueue.Handle<E>> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final double bucketSize;
+    private double headUpperBound;
+
+    // binary min heap, heap[i].index == i
+    @SuppressWarnings("unchecked")
+    private Handle<E>[] heap = new Handle[INITIAL_CAPACITY];
+    private int headSize = 0;
+
+    private final TreeMap<Long, Bucket<E>> tailMap = new TreeMap<>();
+
+    private int size = 0;
+
+    public IndexedHeadSortedQueue(double bucketSize) {
+        this(bucketSize, 0); // assuming positive values by default
+    }
+
+    public IndexedHeadSortedQueue(double bucketSize, double expectedRangeStart) {
+        this.bucketSize = bucketSize;
+        this.headUpperBound = expectedRangeStart + bucketSize; // assuming positive values by default
+    }
+
+    /**
+     * An element together with its priority and its position in the queue it is held by.
+     */
+    public static final class Handle<E> implements Bucketable {
+        private final E element;
+        private double priority;
+
+        private IndexedHeadSortedQueue<E> owner;
+        private Bucket<E> bucket; // null while in the head
+        private int index = -1;
+
+        public Handle(E element, double priority) {
+            this.element = element;
+            this.priority = priority;
+        }
+
+        public E element() {
+            return element;
+        }
+
+        @Override
+        public double priority() {
+            return priority;
+        }
+
+        /**
+         * Whether the handle is currently held by a queue.
+         */
+        public boolean isQueued() {
+            return owner != null;
+        }
+
+        @Override
+        public String toString() {
+            return element + "@" + priority;
+        }
+    }
+
+    // an unordered array of handles, bucket.handles[i].index == i
+    private static final class Bucket<E> {
+        private final long id;
+        @SuppressWarnings("unchecked")
+        private Handle<E>[] handles = new Handle[INITIAL_CAPACITY];
+        private int count = 0;
+
+        private Bucket(long id) {
+            this.id = id;
+        }
+
+        private void add(Handle<E> handle) {
+            if (count == handles.length) {
+                handles = Arrays.copyOf(handles, count * 2);
+            }
+            handle.bucket = this;
+            handle.index = count;
+            handles[count++] = handle;
+        }
+
+        private void remove(Handle<E> handle) {
+            Handle<E> last = handles[--count];
+            handles[handle.index] = last;
+            last.index = handle.index;
+            handles[count] = null;
+        }
+    }
+
+
+    /**
+     * Queues the element with the given priority.
+     *
+     * @return the handle to update or remove the element with
+     */
+    public Handle<E> offer(E element, double priority) {
+        Handle<E> handle = new Handle<>(element, priority);
+        offer(handle);
+        return handle;
+    }
+
+    /**
+     * Queues a handle that is not held by any queue, e.g. one that was polled before.
+     *
+     * @throws IllegalArgumentException if the handle is already queued
+     */
+    @Override
+    public boolean offer(Handle<E> handle) {
+        Objects.requireNonNull(handle);
+        if (handle.owner != null) {
+            throw new IllegalArgumentException("the handle is already queued");
+        }
+
+        handle.owner = this;
+        place(handle);
+        size++;
+        return true;
+    }
+
+    private void place(Handle<E> handle) {
+        if (handle.priority < headUpperBound) {
+            heapInsert(handle);
+        } else {
+            tailMap.computeIfAbsent(getBucketId(handle.priority), Bucket::new).add(handle);
+        }
+    }
+
+    /**
+     * Changes the priority of a queued handle. A handle that stays in the head is sifted, one that stays in its bucket
+     * is not moved at all, and otherwise it is taken out of its position and placed by the new priority.
+     *
+     * @throws IllegalArgumentException if the handle is not held by this queue
+     */
+    public void updatePriority(Handle<E> handle, double newPriority) {
+        Objects.requireNonNull(handle);
+        if (handle.owner != this) {
+            throw new IllegalArgumentException("the handle is not queued in this queue");
+        }
+
+        double oldPriority = handle.priority;
+        handle.priority = newPriority;
+
+        if (handle.bucket == null) {
+            if (newPriority < headUpperBound) {
+                if (newPriority < oldPriority) {
+                    siftUp(handle.index, handle);
+                } else {
+                    siftDown(handle.index, handle);
+                }
+                return;
+            }
+            heapRemove(handle);
+        } else {
+            if (newPriority >= headUpperBound && getBucketId(newPriority) == handle.bucket.id) {
+                return;
+            }
+            bucketRemove(handle);
+        }
+        place(handle);
+    }
+
+    @Override
+    public Handle<E> peek() {
+        return refillHead() ? heap[0] : null;
+    }
+
+    @Override
+    public Handle<E> poll() {
+        if (!refillHead()) {
+            return null;
+        }
+
+        Handle<E> polled = heap[0];
+        heapRemove(polled);
+        release(polled);
+        return polled;
+    }
+
+    // promotes tail buckets until the head is not empty, false if the queue is empty
+    private boolean refillHead() {
+        while (headSize == 0) {
+            Map.Entry<Long, Bucket<E>> entry = tailMap.pollFirstEntry();
+            if (entry == null) {
+                return false;
+            }
+
+            Bucket<E> bucket = entry.getValue();
+            //the head is empty, so the bucket array can become the heap
+            if (heap.length < bucket.count) {
+                heap = Arrays.copyOf(heap, bucket.count);
+            }
+            System.arraycopy(bucket.handles, 0, heap, 0, bucket.count);
+            headSize = bucket.count;
+            for (int i = 0; i < headSize; i++) {
+                heap[i].bucket = null;
+            }
+            for (int i = (headSize >>> 1) - 1; i >= 0; i--) {
+                siftDown(i, heap[i]);
+            }
+            for (int i = 0; i < headSize; i++) {
+                heap[i].index = i;
+            }
+            //everything below the upper border of the promoted bucket now belongs to the head
+            headUpperBound = Math.max(headUpperBound, (entry.getKey() + 1.0) * bucketSize);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a handle in O(log n) if it is held by this queue. Other objects are never contained.
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Handle<?> handle) || handle.owner != this) {
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        Handle<E> queued = (Handle<E>) handle;
+        if (queued.bucket == null) {
+            heapRemove(queued);
+        } else {
+            bucketRemove(queued);
+        }
+        release(queued);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Handle<?> handle && handle.owner == this;
+    }
+
+    private void release(Handle<E> handle) {
+        handle.owner = null;
+        handle.bucket = null;
+        handle.index = -1;
+        size--;
+    }
+
+    private void bucketRemove(Handle<E> handle) {
+        Bucket<E> bucket = handle.bucket;
+        bucket.remove(handle);
+        if (bucket.count == 0) {
+            tailMap.remove(bucket.id);
+        }
+        handle.bucket = null;
+    }
+
+    private void heapInsert(Handle<E> handle) {
+        if (headSize == heap.length) {
+            heap = Arrays.copyOf(heap, headSize * 2);
+        }
+        siftUp(headSize++, handle);
+    }
+
+    private void heapRemove(Handle<E> handle) {
+        int index = handle.index;
+        Handle<E> last = heap[--headSize];
+        heap[headSize] = null;
+        if (last != handle) {
+            siftDown(index, last);
+            if (heap[index] == last) {
+                siftUp(index, last);
+            }
+        }
+    }
+
+    private void siftUp(int index, Handle<E> handle) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            Handle<E> parentHandle = heap[parent];
+            if (handle.priority >= parentHandle.priority) {
+                break;
+            }
+            heap[index] = parentHandle;
+            parentHandle.index = index;
+            index = parent;
+        }
+        heap[index] = handle;
+        handle.index = index;
+    }
+
+    private void siftDown(int index, Handle<E> handle) {
+        int half = headSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < headSize && heap[right].priority < heap[child].priority) {
+                child = right;
+            }
+            Handle<E> childHandle = heap[child];
+            if (handle.priority <= childHandle.priority) {
+                break;
+            }
+            heap[index] = childHandle;
+            childHandle.index = index;
+            index = child;
+        }
+        heap[index] = handle;
+        handle.index = index;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < headSize; i++) {
+            heap[i].owner = null;
+            heap[i].index = -1;
+            heap[i] = null;
+        }
+        headSize = 0;
+        for (Bucket<E> bucket : tailMap.values()) {
+            for (int i = 0; i < bucket.count; i++) {
+                bucket.handles[i].owner = null;
+                bucket.handles[i].bucket = null;
+                bucket.handles[i].index = -1;
+            }
+        }
+        tailMap.clear();
+        size = 0;
+    }
+
+    /**
+     * Iterates a snapshot of the queued handles in no particular order, removal goes through the queue.
+     */
+    @Override
+    public Iterator<Handle<E>> iterator() {
+        @SuppressWarnings("unchecked")
+        Handle<E>[] snapshot = new Handle[size];
+        System.arraycopy(heap, 0, snapshot, 0, headSize);
+        int offset = headSize;
+        for (Bucket<E> bucket : tailMap.values()) {
+            System.arraycopy(bucket.handles, 0, snapshot, offset, bucket.count);
+            offset += bucket.count;
+        }
+
+        return new Iterator<>() {
+            private int cursor = 0;
+            private Handle<E> last;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < snapshot.length;
+            }
+
+            @Override
+            public Handle<E> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = snapshot[cursor++];
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                IndexedHeadSortedQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private long getBucketId(double indicator) {
+        return (long) Math.floor(indicator / bucketSize);
+    }
+}
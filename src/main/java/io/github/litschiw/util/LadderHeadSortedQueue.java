@@ -0,0 +1,412 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Ladder queue variant of {@link HeadSortedQueue} for priorities that span many orders of magnitude.
+ * <p>
+ * There is no fixed bucket size. New elements far in the future are appended to an unsorted top list. Once the head
+ * and all rungs are empty, the top list is spread over a rung with one bucket per element, its width derived from the
+ * smallest and largest priority in the list. Whenever the head runs empty, the first non-empty bucket of the finest
+ * rung is either promoted into the head or, if it holds more than {@code bucketThreshold} elements, subdivided into a
+ * new, finer rung. Buckets are therefore only split where the head is about to go.
+ * <p>
+ * Bucket ids are computed as {@code long}s relative to the start of their rung and kept within the rung, so the whole
+ * {@code double} range, including negative priorities, works without any expected range. Like
+ * {@link PrimitiveHeadSortedQueue} the buckets are plain lists that keep equal elements as duplicates.
+ */
+public class LadderHeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
+
+    private static final int DEFAULT_BUCKET_THRESHOLD = 50;
+
+    // deeper rungs rarely pay off, an overfull bucket at this depth is promoted as it is
+    private static final int MAX_RUNGS = 8;
+
+    private final Comparator<Bucketable> bucketComparator = Comparator.comparingDouble(Bucketable::priority);
+
+    private final int bucketThreshold;
+
+    private final PriorityQueue<T> headQueue = new PriorityQueue<>(bucketComparator);
+
+    // coarsest first, the current bucket of every rung lies within the current bucket of the rung before
+    private final ArrayList<Rung<T>> rungs = new ArrayList<>();
+
+    // everything at or above topStart, unsorted
+    private final ArrayList<T> top = new ArrayList<>();
+    private double topStart = Double.NEGATIVE_INFINITY;
+    private double topMin = Double.POSITIVE_INFINITY;
+    private double topMax = Double.NEGATIVE_INFINITY;
+
+    private int size = 0;
+
+    public LadderHeadSortedQueue() {
+        this(DEFAULT_BUCKET_THRESHOLD);
+    }
+
+    public LadderHeadSortedQueue(Collection<T> elements) {
+        this();
+        this.addAll(elements);
+    }
+
+    /**
+     * @param bucketThreshold buckets with more elements are subdivided into a finer rung instead of being promoted
+     */
+    public LadderHeadSortedQueue(int bucketThreshold) {
+        if (bucketThreshold <= 0) {
+            throw new IllegalArgumentException("the bucket threshold needs to be positive but was " + bucketThreshold);
+        }
+        this.bucketThreshold = bucketThreshold;
+    }
+
+    /**
+     * Number of rungs between the top list and the head.
+     */
+    public int getRungCount() {
+        return rungs.size();
+    }
+
+
+    @Override
+    public Iterator<T> iterator() {
+        return new LadderIterator();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public T peek() {
+        return refillHead() ? headQueue.peek() : null;
+    }
+
+    @Override
+    public T poll() {
+        if (!refillHead()) {
+            return null;
+        }
+
+        size--;
+        return headQueue.poll();
+    }
+
+    private boolean refillHead() {
+        while (headQueue.isEmpty()) {
+            if (rungs.isEmpty()) {
+                if (top.isEmpty()) {
+                    return false;
+                }
+                transferTop();
+                continue;
+            }
+
+            Rung<T> rung = rungs.get(rungs.size() - 1);
+            int index = rung.nextNonEmpty();
+            if (index < 0) {
+                rungs.remove(rungs.size() - 1);
+                continue;
+            }
+
+            ArrayList<T> bucket = rung.take(index);
+            double lower = rung.bucketStart(index);
+            double upper = rung.currentStart();
+            if (bucket.size() <= bucketThreshold || rungs.size() == MAX_RUNGS || !spawn(bucket, lower, upper)) {
+                headQueue.addAll(bucket);
+            }
+        }
+        return true;
+    }
+
+    // spreads the top list over a new rung, the top then starts above its largest element
+    private void transferTop() {
+        double lower = topMin;
+        double upper = Math.nextUp(topMax);
+        topStart = upper;
+        topMin = Double.POSITIVE_INFINITY;
+        topMax = Double.NEGATIVE_INFINITY;
+
+        if (!spawn(top, lower, upper)) {
+            headQueue.addAll(top);
+        }
+        top.clear();
+    }
+
+    // puts the elements into a new finest rung covering [lower, upper), false if that range cannot be divided
+    private boolean spawn(List<T> elements, double lower, double upper) {
+        int bucketCount = elements.size();
+        //divided first, so that the width does not overflow for ranges wider than Double.MAX_VALUE
+        double width = upper / bucketCount - lower / bucketCount;
+        if (!(width > 0) || Double.isInfinite(width) || !(lower + width > lower)) {
+            return false;
+        }
+
+        Rung<T> rung = new Rung<>(lower, width, upper, bucketCount);
+        for (T element : elements) {
+            rung.add(element);
+        }
+        rungs.add(rung);
+        return true;
+    }
+
+    @Override
+    public boolean offer(T element) {
+        Objects.requireNonNull(element);
+
+        double priority = element.priority();
+
+        if (priority >= topStart) {
+            top.add(element);
+            topMin = Math.min(topMin, priority);
+            topMax = Math.max(topMax, priority);
+        } else {
+            Rung<T> rung = rungFor(priority);
+            if (rung != null) {
+                rung.add(element);
+            } else {
+                headQueue.offer(element);
+            }
+        }
+
+        size++;
+        return true;
+    }
+
+    // the coarsest rung whose remaining range contains the priority, null if it belongs into the head
+    // everything below the current start of the finest rung (or below topStart without rungs) is in the head
+    private Rung<T> rungFor(double priority) {
+        for (Rung<T> rung : rungs) {
+            if (priority >= rung.currentStart()) {
+                return rung;
+            }
+        }
+        return null;
+    }
+
+
+    @Override
+    public boolean remove(Object element) {
+        if (!(element instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        double priority = bucketable.priority();
+        boolean removed;
+
+        if (priority >= topStart) {
+            removed = removeSwapping(top, element);
+        } else {
+            Rung<T> rung = rungFor(priority);
+            removed = rung != null ? rung.remove(priority, element) : headQueue.remove(element);
+        }
+
+        if (removed) {
+            size--;
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+
+        int removed = removeFrom(headQueue, filter) + removeFrom(top, filter);
+        for (Rung<T> rung : rungs) {
+            removed += rung.removeIf(filter);
+        }
+
+        size -= removed;
+        return removed > 0;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(element -> !c.contains(element));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        double priority = bucketable.priority();
+
+        if (priority >= topStart) {
+            return top.contains(o);
+        }
+        Rung<T> rung = rungFor(priority);
+        return rung != null ? rung.contains(priority, o) : headQueue.contains(o);
+    }
+
+    @Override
+    public void clear() {
+        headQueue.clear();
+        rungs.clear();
+        top.clear();
+        topStart = Double.NEGATIVE_INFINITY;
+        topMin = Double.POSITIVE_INFINITY;
+        topMax = Double.NEGATIVE_INFINITY;
+        size = 0;
+    }
+
+    // swaps the last element into the gap, the order inside a bucket is irrelevant
+    private static boolean removeSwapping(ArrayList<?> bucket, Object element) {
+        int index = bucket.indexOf(element);
+        if (index < 0) {
+            return false;
+        }
+        int last = bucket.size() - 1;
+        Collections.swap(bucket, index, last);
+        bucket.remove(last);
+        return true;
+    }
+
+    private static <T> int removeFrom(Collection<T> collection, Predicate<? super T> filter) {
+        int before = collection.size();
+        collection.removeIf(filter);
+        return before - collection.size();
+    }
+
+    // buckets of equal width covering [start, end), the ones before current are consumed
+    private static final class Rung<T extends Bucketable> {
+        private final double start;
+        private final double width;
+        private final double end;
+        private final ArrayList<T>[] buckets;
+        private int current = 0;
+        private int count = 0;
+
+        @SuppressWarnings("unchecked")
+        private Rung(double start, double width, double end, int bucketCount) {
+            this.start = start;
+            this.width = width;
+            this.end = end;
+            this.buckets = new ArrayList[bucketCount];
+        }
+
+        // clamped to end, so that a used up rung does not claim anything between its rounded and its exact end
+        private double bucketStart(long index) {
+            return index >= buckets.length ? end : Math.min(end, start + index * width);
+        }
+
+        private double currentStart() {
+            return bucketStart(current);
+        }
+
+        private int bucketIndex(double priority) {
+            //long so that far off priorities saturate instead of overflowing, then clamped into the remaining buckets
+            long estimate = (long) Math.floor(priority / width - start / width);
+            int index = (int) Math.max(current, Math.min(buckets.length - 1, estimate));
+            //the estimate can be off by one because of rounding, the borders are what routing uses
+            while (index > current && priority < bucketStart(index)) {
+                index--;
+            }
+            while (index < buckets.length - 1 && priority >= bucketStart(index + 1)) {
+                index++;
+            }
+            return index;
+        }
+
+        private void add(T element) {
+            int index = bucketIndex(element.priority());
+            if (buckets[index] == null) {
+                buckets[index] = new ArrayList<>();
+            }
+            buckets[index].add(element);
+            count++;
+        }
+
+        private boolean remove(double priority, Object element) {
+            ArrayList<T> bucket = buckets[bucketIndex(priority)];
+            if (bucket != null && removeSwapping(bucket, element)) {
+                count--;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean contains(double priority, Object element) {
+            ArrayList<T> bucket = buckets[bucketIndex(priority)];
+            return bucket != null && bucket.contains(element);
+        }
+
+        private int removeIf(Predicate<? super T> filter) {
+            int removed = 0;
+            for (int i = current; i < buckets.length; i++) {
+                if (buckets[i] != null) {
+                    removed += removeFrom(buckets[i], filter);
+                }
+            }
+            count -= removed;
+            return removed;
+        }
+
+        // index of the first non-empty remaining bucket, -1 if the rung is used up
+        private int nextNonEmpty() {
+            if (count == 0) {
+                return -1;
+            }
+            while (buckets[current] == null || buckets[current].isEmpty()) {
+                buckets[current++] = null;
+            }
+            return current;
+        }
+
+        // removes the bucket and moves past it
+        private ArrayList<T> take(int index) {
+            ArrayList<T> bucket = buckets[index];
+            buckets[index] = null;
+            current = index + 1;
+            count -= bucket.size();
+            return bucket;
+        }
+    }
+
+    // walks the head, the rungs and the top without copying, the order is unspecified
+    private final class LadderIterator implements Iterator<T> {
+        private final Iterator<Iterator<T>> sources;
+        private Iterator<T> current = headQueue.iterator();
+
+        private LadderIterator() {
+            ArrayList<Iterator<T>> iterators = new ArrayList<>();
+            for (Rung<T> rung : rungs) {
+                for (int i = rung.current; i < rung.buckets.length; i++) {
+                    if (rung.buckets[i] != null) {
+                        iterators.add(rung.buckets[i].iterator());
+                    }
+                }
+            }
+            iterators.add(top.iterator());
+            sources = iterators.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (!sources.hasNext()) {
+                    return false;
+                }
+                current = sources.next();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Multi-producer, single-consumer variant of {@link HeadSortedQueue}.
+ * <p>
+ * {@link #offer(Bucketable)} and {@link #add(Bucketable)} may be called from any thread. They only push the element
+ * onto one of several lock-free stacks (selected by the producer's thread id) and never touch the bucket structure.
+ * All other methods must be called from the single consumer thread. They first drain the stacks and insert the
+ * buffered elements in one batch, grouped by bucket id, into the underlying {@link HeadSortedQueue}.
+ * <p>
+ * A producer's offer always succeeds, equal elements are merged by the tail buckets while draining.
+ */
+public class MpscHeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
+
+    private final HeadSortedQueue<T> queue;
+
+    private final AtomicReferenceArray<Node<T>> stripes;
+
+    // reused by the consumer for every drain
+    private final ArrayList<T> drained = new ArrayList<>();
+
+    public MpscHeadSortedQueue(double bucketSize) {
+        this(bucketSize, 0); // assuming positive values by default
+    }
+
+    public MpscHeadSortedQueue(double bucketSize, double expectedRangeStart) {
+        this(bucketSize, expectedRangeStart, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes number of producer stacks, rounded up to a power of two
+     */
+    public MpscHeadSortedQueue(double bucketSize, double expectedRangeStart, int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("at least one stripe is required but got " + stripes);
+        }
+
+        this.queue = new HeadSortedQueue<>(bucketSize, expectedRangeStart);
+
+        int stripeCount = 1;
+        while (stripeCount < stripes) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new AtomicReferenceArray<>(stripeCount);
+    }
+
+
+    @Override
+    public boolean offer(T element) {
+        Objects.requireNonNull(element);
+
+        Node<T> node = new Node<>(element);
+        int index = (int) Thread.currentThread().getId() & (stripes.length() - 1);
+
+        Node<T> top;
+        do {
+            top = stripes.get(index);
+            node.next = top;
+        } while (!stripes.compareAndSet(index, top, node));
+
+        return true;
+    }
+
+    @Override
+    public boolean add(T element) {
+        return this.offer(element);
+    }
+
+    // moves everything the producers pushed so far into the queue
+    private void drain() {
+        for (int i = 0; i < stripes.length(); i++) {
+            if (stripes.get(i) == null) {
+                continue;
+            }
+            for (Node<T> node = stripes.getAndSet(i, null); node != null; node = node.next) {
+                drained.add(node.element);
+            }
+        }
+
+        if (!drained.isEmpty()) {
+            queue.offerBatch(drained);
+            drained.clear();
+        }
+    }
+
+
+    @Override
+    public T peek() {
+        drain();
+        return queue.peek();
+    }
+
+    @Override
+    public T poll() {
+        drain();
+        return queue.poll();
+    }
+
+    @Override
+    public int size() {
+        drain();
+        return queue.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        drain();
+        return queue.iterator();
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        drain();
+        return queue.remove(element);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        drain();
+        return queue.contains(o);
+    }
+
+    private static final class Node<T> {
+        private final T element;
+        private Node<T> next;
+
+        private Node(T element) {
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe, relaxed priority queue made of independent {@link HeadSortedQueue} shards (a MultiQueue).
+ * <p>
+ * {@link #offer(Bucketable)} inserts into a random shard. {@link #poll()} looks at the smallest elements of two random
+ * shards and polls the smaller one. Both only lock a single shard and pick another one if that lock is held, so
+ * threads hardly contend as long as there are clearly more shards than threads.
+ * <p>
+ * In exchange, polls are only approximately in priority order. The rank error of a poll is the number of queued
+ * elements that are smaller than the polled one. With {@code n} shards it is O(n) in expectation and
+ * O(n log n) with high probability, independent of the queue size (Alistarh et al., "The Power of Choice in Priority
+ * Scheduling", 2017). A single thread polling a queue with one shard gets the exact order. Equal elements are only
+ * merged if they end up in the same shard.
+ * <p>
+ * {@link #peek()}, {@link #remove(Object)} and {@link #contains(Object)} look at every shard. The iterator works on a
+ * snapshot and is weakly consistent.
+ */
+public class MultiHeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
+
+    private final Comparator<Bucketable> bucketComparator = Comparator.comparingDouble(Bucketable::priority);
+
+    private final Shard<T>[] shards;
+
+    private final LongAdder count = new LongAdder();
+
+    public MultiHeadSortedQueue(double bucketSize) {
+        this(bucketSize, 0); // assuming positive values by default
+    }
+
+    public MultiHeadSortedQueue(double bucketSize, double expectedRangeStart) {
+        this(bucketSize, expectedRangeStart, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param shards number of independent queues, a small multiple of the number of threads using the queue keeps
+     *               the lock contention low, fewer shards keep the rank error low
+     */
+    @SuppressWarnings("unchecked")
+    public MultiHeadSortedQueue(double bucketSize, double expectedRangeStart, int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("at least one shard is required but got " + shards);
+        }
+
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard<>(new HeadSortedQueue<>(bucketSize, expectedRangeStart));
+        }
+    }
+
+    private static final class Shard<T extends Bucketable> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final HeadSortedQueue<T> queue;
+
+        // the smallest element, written under the lock and read without it to choose between shards
+        private volatile T top;
+
+        private Shard(HeadSortedQueue<T> queue) {
+            this.queue = queue;
+        }
+
+        private double topPriority() {
+            T current = top;
+            return current == null ? Double.POSITIVE_INFINITY : current.priority();
+        }
+    }
+
+
+    @Override
+    public boolean offer(T element) {
+        Objects.requireNonNull(element);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Shard<T> shard = shards[random.nextInt(shards.length)];
+        for (int attempt = 1; !shard.lock.tryLock(); attempt++) {
+            if (attempt == shards.length) {
+                shard.lock.lock(); // every try hit a held lock, wait instead of spinning
+                break;
+            }
+            shard = shards[random.nextInt(shards.length)];
+        }
+
+        try {
+            boolean added = shard.queue.offer(element);
+            if (added) {
+                T top = shard.top;
+                if (top == null || element.priority() < top.priority()) {
+                    shard.top = element;
+                }
+                count.increment();
+            }
+            return added;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean add(T element) {
+        return this.offer(element);
+    }
+
+    /**
+     * Polls the smaller of the smallest elements of two random shards, so the result is only approximately the
+     * smallest element of the queue. Returns {@code null} only if every shard was empty when it was looked at.
+     */
+    @Override
+    public T poll() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < 2 * shards.length; attempt++) {
+            Shard<T> first = shards[random.nextInt(shards.length)];
+            Shard<T> second = shards[random.nextInt(shards.length)];
+            Shard<T> chosen = second.topPriority() < first.topPriority() ? second : first;
+
+            if (chosen.top == null) {
+                break; // both are empty, look at all shards instead of guessing further
+            }
+            if (!chosen.lock.tryLock()) {
+                continue;
+            }
+            try {
+                T polled = pollLocked(chosen);
+                if (polled != null) {
+                    return polled;
+                }
+            } finally {
+                chosen.lock.unlock();
+            }
+        }
+
+        //the queue is (nearly) empty or heavily contended, walk the shards from a random start
+        int start = random.nextInt(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            Shard<T> shard = shards[(start + i) % shards.length];
+            if (shard.top == null) {
+                continue;
+            }
+            shard.lock.lock();
+            try {
+                T polled = pollLocked(shard);
+                if (polled != null) {
+                    return polled;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return null;
+    }
+
+    private T pollLocked(Shard<T> shard) {
+        T polled = shard.queue.poll();
+        if (polled != null) {
+            shard.top = shard.queue.peek();
+            count.decrement();
+        }
+        return polled;
+    }
+
+    /**
+     * The smallest element over all shards at the time each of them is looked at.
+     */
+    @Override
+    public T peek() {
+        T smallest = null;
+        for (Shard<T> shard : shards) {
+            T top = shard.top;
+            if (top != null && (smallest == null || top.priority() < smallest.priority())) {
+                smallest = top;
+            }
+        }
+        return smallest;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Math.max(0, count.sum()), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Shard<T> shard : shards) {
+            if (shard.top != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Bucketable)) {
+            return false;
+        }
+
+        for (Shard<T> shard : shards) {
+            shard.lock.lock();
+            try {
+                if (shard.queue.remove(o)) {
+                    shard.top = shard.queue.peek();
+                    count.decrement();
+                    return true;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Bucketable)) {
+            return false;
+        }
+
+        for (Shard<T> shard : shards) {
+            shard.lock.lock();
+            try {
+                if (shard.queue.contains(o)) {
+                    return true;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        for (Shard<T> shard : shards) {
+            shard.lock.lock();
+            try {
+                count.add(-shard.queue.size());
+                shard.queue.clear();
+                shard.top = null;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Iterates a sorted snapshot of all shards, removal goes through the queue.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        ArrayList<T> snapshot = new ArrayList<>(size());
+        for (Shard<T> shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.queue.unorderedIterator().forEachRemaining(snapshot::add);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+
+        snapshot.sort(bucketComparator);
+        Iterator<T> iterator = snapshot.iterator();
+        return new Iterator<>() {
+            private T last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return last = iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                MultiHeadSortedQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+}
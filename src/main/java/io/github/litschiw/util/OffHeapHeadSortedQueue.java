@@ -0,0 +1,476 @@
+package io.github.litschiw.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * {@link HeadSortedQueue} variant that keeps its tail outside of the Java heap.
+ * <p>
+ * Tail elements are serialized by an {@link ElementCodec} into a direct {@link ByteBuffer} per bucket. On the heap a
+ * bucket only keeps a primitive index of priority, offset and length per element, so the garbage collector has no
+ * per-element objects to trace in the tail. A bucket is decoded when it is promoted into the head, which is an
+ * ordinary binary heap of decoded elements.
+ * <p>
+ * Like {@link PrimitiveHeadSortedQueue} the buckets keep equal elements as duplicates. {@link #contains(Object)} and
+ * {@link #remove(Object)} only decode the elements of the bucket that have the same priority as the argument.
+ * <p>
+ * With a spill directory, tail buckets can also be moved out of memory. Whenever the direct buffers of the tail exceed
+ * the memory budget, the farthest buckets that are at least {@code spillDistance} buckets past the head are copied
+ * into memory-mapped files. A spilled bucket keeps working like a resident one. Every time a bucket is promoted, the
+ * pages of the bucket right after the head are loaded on a background thread if it is spilled, so that its promotion
+ * decodes it from memory instead of waiting for the disk.
+ */
+public class OffHeapHeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_BYTES = 1024;
+
+    // loads the pages of spilled buckets ahead of their promotion, shared by all queues
+    private static final Executor PREFETCHER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "off-heap-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Comparator<Bucketable> bucketComparator = Comparator.comparingDouble(Bucketable::priority);
+
+    private final ElementCodec<T> codec;
+
+    private final double bucketSize;
+    private double headUpperBound;
+
+    private final PriorityQueue<T> headQueue = new PriorityQueue<>(bucketComparator);
+
+    private final TreeMap<Integer, Bucket> tailMap = new TreeMap<>();
+
+    private int size = 0;
+
+    // null if spilling is disabled
+    private final Path spillDirectory;
+    private final int spillDistance;
+    private final long memoryBudget;
+
+    private long residentBytes = 0;
+    // ids of the tail buckets that are not spilled, only maintained if spilling is enabled
+    private final TreeSet<Integer> residentIds = new TreeSet<>();
+
+    public OffHeapHeadSortedQueue(double bucketSize, ElementCodec<T> codec) {
+        this(bucketSize, 0, codec); // assuming positive values by default
+    }
+
+    public OffHeapHeadSortedQueue(double bucketSize, double expectedRangeStart, ElementCodec<T> codec) {
+        this.bucketSize = bucketSize;
+        this.headUpperBound = expectedRangeStart + bucketSize; // assuming positive values by default
+        this.codec = Objects.requireNonNull(codec);
+        this.spillDirectory = null;
+        this.spillDistance = 0;
+        this.memoryBudget = Long.MAX_VALUE;
+    }
+
+    /**
+     * @param spillDirectory directory for the memory-mapped files of spilled buckets, the files are deleted right
+     *                       after they are mapped
+     * @param spillDistance  number of buckets after the head that are never spilled
+     * @param memoryBudget   bytes of direct buffers the tail may use before far buckets are spilled
+     */
+    public OffHeapHeadSortedQueue(double bucketSize, double expectedRangeStart, ElementCodec<T> codec, Path spillDirectory,
+                                  int spillDistance, long memoryBudget) {
+        if (spillDistance < 0) {
+            throw new IllegalArgumentException("the spill distance cannot be negative but was " + spillDistance);
+        }
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("the memory budget cannot be negative but was " + memoryBudget);
+        }
+
+        this.bucketSize = bucketSize;
+        this.headUpperBound = expectedRangeStart + bucketSize; // assuming positive values by default
+        this.codec = Objects.requireNonNull(codec);
+        this.spillDirectory = Objects.requireNonNull(spillDirectory);
+        this.spillDistance = spillDistance;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Bytes held in direct buffers and mapped files by the tail, including space of removed elements that was not
+     * reclaimed yet.
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (Bucket bucket : tailMap.values()) {
+            bytes += bucket.data.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Bytes held in direct buffers by the tail, i.e. everything that is not spilled.
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public int getSpilledBucketCount() {
+        return spillDirectory == null ? 0 : tailMap.size() - residentIds.size();
+    }
+
+
+    @Override
+    public Iterator<T> iterator() {
+        return new BucketIterator();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public T peek() {
+        return refillHead() ? headQueue.peek() : null;
+    }
+
+    @Override
+    public T poll() {
+        if (!refillHead()) {
+            return null;
+        }
+
+        size--;
+        return headQueue.poll();
+    }
+
+    // decodes the smallest non-empty bucket into the head if the head ran empty, returns false if the queue is empty
+    private boolean refillHead() {
+        while (headQueue.isEmpty()) {
+            Map.Entry<Integer, Bucket> entry = tailMap.pollFirstEntry();
+            if (entry == null) {
+                return false;
+            }
+            Bucket bucket = entry.getValue();
+            headQueue.addAll(bucket.decodeAll());
+            bucket.release();
+            //everything below the upper border of the promoted bucket now belongs to the head
+            headUpperBound = Math.max(headUpperBound, (entry.getKey() + 1.0) * bucketSize);
+            prefetch();
+        }
+        return true;
+    }
+
+    // touches the pages of the next bucket in the background, so that its promotion does not have to wait for the disk
+    private void prefetch() {
+        Map.Entry<Integer, Bucket> next = tailMap.firstEntry();
+        if (next != null && next.getValue().spilled) {
+            //load only reads the mapping, the bucket may be written or replaced meanwhile
+            PREFETCHER.execute(((MappedByteBuffer) next.getValue().data)::load);
+        }
+    }
+
+    // spills the farthest resident buckets until the budget holds, buckets close to the head stay
+    private void spillFarBuckets() {
+        if (spillDirectory == null) {
+            return;
+        }
+
+        long spillFrom = (long) getBucketId(headUpperBound) + spillDistance;
+        while (residentBytes > memoryBudget && !residentIds.isEmpty() && residentIds.last() >= spillFrom) {
+            tailMap.get(residentIds.last()).spill();
+        }
+    }
+
+    private ByteBuffer mapSpillFile(int capacity) {
+        try {
+            Path file = Files.createTempFile(spillDirectory, "bucket-", ".spill");
+            //the mapping stays valid after the channel is closed and the file is gone
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not spill a bucket to " + spillDirectory, e);
+        }
+    }
+
+    @Override
+    public boolean offer(T element) {
+        Objects.requireNonNull(element);
+
+        double priority = element.priority();
+
+        if (priority < headUpperBound) {
+            headQueue.offer(element);
+        } else {
+            tailMap.computeIfAbsent(getBucketId(priority), Bucket::new).add(priority, element);
+            if (residentBytes > memoryBudget) {
+                spillFarBuckets();
+            }
+        }
+
+        size++;
+        return true;
+    }
+
+
+    @Override
+    public boolean remove(Object element) {
+        if (!(element instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        double priority = bucketable.priority();
+
+        if (priority < headUpperBound) {
+            if (!headQueue.remove(element)) {
+                return false;
+            }
+        } else {
+            Bucket bucket = tailMap.get(getBucketId(priority));
+            int index = bucket == null ? -1 : bucket.indexOf(priority, element);
+            if (index < 0) {
+                return false;
+            }
+            bucket.removeAt(index);
+        }
+
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+
+        int removed = headQueue.size();
+        headQueue.removeIf(filter);
+        removed -= headQueue.size();
+        for (Bucket bucket : tailMap.values()) {
+            removed += bucket.removeIf(filter);
+        }
+
+        size -= removed;
+        return removed > 0;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(element -> !c.contains(element));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        double priority = bucketable.priority();
+
+        if (priority < headUpperBound) {
+            return headQueue.contains(o);
+        } else {
+            Bucket bucket = tailMap.get(getBucketId(priority));
+            return bucket != null && bucket.indexOf(priority, o) >= 0;
+        }
+    }
+
+    @Override
+    public void clear() {
+        headQueue.clear();
+        tailMap.clear();
+        residentIds.clear();
+        residentBytes = 0;
+        size = 0;
+    }
+
+    private int getBucketId(double indicator) {
+        return (int) Math.floor(indicator / bucketSize);
+    }
+
+    // encoded elements appended to a direct or mapped buffer, priorities[i] belongs to the bytes at offsets[i]
+    private final class Bucket {
+        private final int id;
+        private double[] priorities = new double[INITIAL_CAPACITY];
+        private int[] offsets = new int[INITIAL_CAPACITY];
+        private int[] lengths = new int[INITIAL_CAPACITY];
+        private int count = 0;
+
+        // written up to its position, reader is an independent view for decoding
+        private ByteBuffer data = ByteBuffer.allocateDirect(INITIAL_BYTES);
+        private ByteBuffer reader = data.duplicate();
+        private int deadBytes = 0;
+        private boolean spilled = false;
+
+        private Bucket(int id) {
+            this.id = id;
+            residentBytes += data.capacity();
+            if (spillDirectory != null) {
+                residentIds.add(id);
+            }
+        }
+
+        private void add(double priority, T element) {
+            int length = codec.encodedSize(element);
+            ensureBytes(length);
+            if (count == priorities.length) {
+                int capacity = count + (count >> 1) + 1;
+                priorities = Arrays.copyOf(priorities, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+
+            int offset = data.position();
+            codec.encode(element, data);
+            if (data.position() - offset != length) {
+                int written = data.position() - offset;
+                data.position(offset);
+                throw new IllegalStateException("the codec wrote " + written + " bytes but announced " + length);
+            }
+
+            priorities[count] = priority;
+            offsets[count] = offset;
+            lengths[count] = length;
+            count++;
+        }
+
+        private void ensureBytes(int length) {
+            if (data.remaining() >= length) {
+                return;
+            }
+
+            int live = data.position() - deadBytes;
+            //compacting alone is enough if it frees at least half of the buffer, otherwise the buffer grows as well
+            int capacity = data.capacity();
+            if (live + length > capacity / 2) {
+                capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(2L * capacity, (long) live + length));
+            }
+            relocate(capacity, spilled);
+        }
+
+        private void spill() {
+            relocate(Math.max(INITIAL_BYTES, data.position() - deadBytes), true);
+        }
+
+        // copies the live elements into a new buffer, dropping the space of removed ones
+        private void relocate(int capacity, boolean mapped) {
+            ByteBuffer target = mapped ? mapSpillFile(capacity) : ByteBuffer.allocateDirect(capacity);
+            for (int i = 0; i < count; i++) {
+                int offset = target.position();
+                target.put(offset, data, offsets[i], lengths[i]);
+                target.position(offset + lengths[i]);
+                offsets[i] = offset;
+            }
+
+            release();
+            if (!mapped) {
+                residentBytes += capacity;
+                if (spillDirectory != null) {
+                    residentIds.add(id);
+                }
+            }
+
+            data = target;
+            reader = data.duplicate();
+            deadBytes = 0;
+            spilled = mapped;
+        }
+
+        // stops accounting for the buffer, it is dropped or replaced
+        private void release() {
+            if (!spilled) {
+                residentBytes -= data.capacity();
+                residentIds.remove(id);
+            }
+        }
+
+        private T decode(int index) {
+            reader.limit(offsets[index] + lengths[index]).position(offsets[index]);
+            return codec.decode(reader);
+        }
+
+        private List<T> decodeAll() {
+            ArrayList<T> elements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                elements.add(decode(i));
+            }
+            return elements;
+        }
+
+        private int indexOf(double priority, Object element) {
+            for (int i = 0; i < count; i++) {
+                if (priorities[i] == priority && element.equals(decode(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // swaps the last element into the gap of the index, the bytes stay until the next relocation
+        private void removeAt(int index) {
+            deadBytes += lengths[index];
+            count--;
+            priorities[index] = priorities[count];
+            offsets[index] = offsets[count];
+            lengths[index] = lengths[count];
+        }
+
+        private int removeIf(Predicate<? super T> filter) {
+            int removed = 0;
+            for (int i = 0; i < count; ) {
+                if (filter.test(decode(i))) {
+                    removeAt(i);
+                    removed++;
+                } else {
+                    i++;
+                }
+            }
+            return removed;
+        }
+    }
+
+    // walks the head and then decodes the tail buckets one element at a time, the order is unspecified
+    private final class BucketIterator implements Iterator<T> {
+        private final Iterator<T> head = headQueue.iterator();
+        private final Iterator<Bucket> buckets = tailMap.values().iterator();
+        private Bucket current;
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() {
+            if (head.hasNext()) {
+                return true;
+            }
+            while (current == null || index >= current.count) {
+                if (!buckets.hasNext()) {
+                    return false;
+                }
+                current = buckets.next();
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current == null ? head.next() : current.decode(index++);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Struct-of-arrays variant of {@link HeadSortedQueue}.
+ * <p>
+ * The priority of every element is read once in {@link #offer(Bucketable)} and cached in a {@code double[]} next to
+ * an {@code Object[]} of the elements, both in the head heap and in the tail buckets. Sifting only compares the cached
+ * primitives and a tail insert is a plain append, so there is no per-element node and no {@code priority()} call
+ * after the offer. A promoted bucket becomes the head in place and is heapified in linear time.
+ * <p>
+ * Unlike {@link HeadSortedQueue} the buckets are not hash based: equal elements are kept as duplicates and
+ * {@link #contains(Object)} and {@link #remove(Object)} scan the single bucket (or the head) the priority maps to.
+ */
+public class PrimitiveHeadSortedQueue<T extends Bucketable> extends AbstractQueue<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final double bucketSize;
+    private double headUpperBound;
+
+    // binary min heap on head.priorities, head.elements[i] belongs to head.priorities[i]
+    private Bucket head = new Bucket(INITIAL_CAPACITY);
+
+    private final TreeMap<Integer, Bucket> tailMap = new TreeMap<>();
+
+    private int size = 0;
+
+    public PrimitiveHeadSortedQueue(double bucketSize) {
+        this(bucketSize, 0); // assuming positive values by default
+    }
+
+    public PrimitiveHeadSortedQueue(double bucketSize, Collection<T> elements) {
+        this(bucketSize);
+        this.addAll(elements);
+    }
+
+    public PrimitiveHeadSortedQueue(double bucketSize, double expectedRangeStart) {
+        this.bucketSize = bucketSize;
+        this.headUpperBound = expectedRangeStart + bucketSize; // assuming positive values by default
+    }
+
+    public PrimitiveHeadSortedQueue(double bucketSize, double expectedRangeStart, int preAllocatedBuckets) {
+        this(bucketSize, expectedRangeStart);
+
+        double currentIndicator = expectedRangeStart + 2 * bucketSize;
+        for (int i = 0; i < preAllocatedBuckets; i++) {
+            tailMap.putIfAbsent(getBucketId(currentIndicator), new Bucket(INITIAL_CAPACITY));
+            currentIndicator += bucketSize;
+        }
+    }
+
+
+    @Override
+    public Iterator<T> iterator() {
+        return new BucketIterator();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        return refillHead() ? (T) head.elements[0] : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        if (!refillHead()) {
+            return null;
+        }
+
+        T polled = (T) head.elements[0];
+        removeFromHead(0);
+        size--;
+        return polled;
+    }
+
+    @Override
+    public boolean offer(T element) {
+        Objects.requireNonNull(element);
+
+        double priority = element.priority();
+
+        if (priority < headUpperBound) {
+            head.add(priority, element);
+            siftUp(head.size - 1);
+        } else {
+            tailMap.computeIfAbsent(getBucketId(priority), k -> new Bucket(INITIAL_CAPACITY)).add(priority, element);
+        }
+
+        size++;
+        return true;
+    }
+
+
+    @Override
+    public boolean remove(Object element) {
+        if (!(element instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        double priority = bucketable.priority();
+
+        if (priority < headUpperBound) {
+            int index = head.indexOf(priority, element);
+            if (index < 0) {
+                return false;
+            }
+            removeFromHead(index);
+        } else {
+            Bucket bucket = tailMap.get(getBucketId(priority));
+            int index = bucket == null ? -1 : bucket.indexOf(priority, element);
+            if (index < 0) {
+                return false;
+            }
+            bucket.removeAt(index);
+        }
+
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+
+        int removed = head.removeIf(filter);
+        if (removed > 0) {
+            heapify();
+        }
+        for (Bucket bucket : tailMap.values()) {
+            removed += bucket.removeIf(filter);
+        }
+
+        size -= removed;
+        return removed > 0;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(element -> !c.contains(element));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Bucketable bucketable)) {
+            return false;
+        }
+
+        double priority = bucketable.priority();
+
+        if (priority < headUpperBound) {
+            return head.indexOf(priority, o) >= 0;
+        } else {
+            Bucket bucket = tailMap.get(getBucketId(priority));
+            return bucket != null && bucket.indexOf(priority, o) >= 0;
+        }
+    }
+
+    @Override
+    public void clear() {
+        head = new Bucket(INITIAL_CAPACITY);
+        tailMap.clear();
+        size = 0;
+    }
+
+    // makes the smallest non-empty bucket the new head if the head ran empty, returns false if the queue is empty
+    private boolean refillHead() {
+        while (head.size == 0) {
+            Map.Entry<Integer, Bucket> entry = tailMap.pollFirstEntry();
+            if (entry == null) {
+                return false;
+            }
+            head = entry.getValue();
+            heapify();
+            headUpperBound = Math.max(headUpperBound, (entry.getKey() + 1.0) * bucketSize);
+        }
+        return true;
+    }
+
+    private void removeFromHead(int index) {
+        int last = --head.size;
+        if (index != last) {
+            head.priorities[index] = head.priorities[last];
+            head.elements[index] = head.elements[last];
+            head.elements[last] = null;
+            if (siftDown(index) == index) {
+                siftUp(index);
+            }
+        } else {
+            head.elements[last] = null;
+        }
+    }
+
+    private void heapify() {
+        for (int i = (head.size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int index) {
+        double[] priorities = head.priorities;
+        Object[] elements = head.elements;
+        double priority = priorities[index];
+        Object element = elements[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            priorities[index] = priorities[parent];
+            elements[index] = elements[parent];
+            index = parent;
+        }
+
+        priorities[index] = priority;
+        elements[index] = element;
+    }
+
+    private int siftDown(int index) {
+        double[] priorities = head.priorities;
+        Object[] elements = head.elements;
+        int size = head.size;
+        double priority = priorities[index];
+        Object element = elements[index];
+
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && priorities[right] < priorities[child]) {
+                child = right;
+            }
+            if (priority <= priorities[child]) {
+                break;
+            }
+            priorities[index] = priorities[child];
+            elements[index] = elements[child];
+            index = child;
+        }
+
+        priorities[index] = priority;
+        elements[index] = element;
+        return index;
+    }
+
+    private int getBucketId(double indicator) {
+        return (int) Math.floor(indicator / bucketSize);
+    }
+
+    private static final class Bucket {
+        private double[] priorities;
+        private Object[] elements;
+        private int size = 0;
+
+        private Bucket(int capacity) {
+            priorities = new double[capacity];
+            elements = new Object[capacity];
+        }
+
+        private void add(double priority, Object element) {
+            if (size == elements.length) {
+                int capacity = size + (size >> 1) + 1;
+                priorities = Arrays.copyOf(priorities, capacity);
+                elements = Arrays.copyOf(elements, capacity);
+            }
+            priorities[size] = priority;
+            elements[size] = element;
+            size++;
+        }
+
+        private int indexOf(double priority, Object element) {
+            for (int i = 0; i < size; i++) {
+                if (priorities[i] == priority && element.equals(elements[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // swaps the last element into the gap, the order inside a tail bucket is irrelevant
+        private void removeAt(int index) {
+            size--;
+            priorities[index] = priorities[size];
+            elements[index] = elements[size];
+            elements[size] = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> int removeIf(Predicate<? super T> filter) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!filter.test((T) elements[i])) {
+                    priorities[kept] = priorities[i];
+                    elements[kept] = elements[i];
+                    kept++;
+                }
+            }
+            Arrays.fill(elements, kept, size, null);
+            int removed = size - kept;
+            size = kept;
+            return removed;
+        }
+    }
+
+    // walks the head and then the tail buckets without copying, the order is unspecified
+    private final class BucketIterator implements Iterator<T> {
+        private final Iterator<Bucket> buckets = tailMap.values().iterator();
+        private Bucket current = head;
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() {
+            while (index >= current.size) {
+                if (!buckets.hasNext()) {
+                    return false;
+                }
+                current = buckets.next();
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (T) current.elements[index++];
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.litschiw.util;
+
+import java.util.Arrays;
+
+final class PrioritySort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private PrioritySort() {
+    }
+
+    // sorts both arrays by priority, LSD radix sort on the order preserving bit patterns of the doubles
+    static void sort(double[] priorities, Object[] elements, int n) {
+        if (n < INSERTION_SORT_THRESHOLD) {
+            insertionSort(priorities, elements, n);
+            return;
+        }
+
+        long[] keys = new long[n];
+        long[] keyBuffer = new long[n];
+        Object[] elementBuffer = new Object[n];
+        for (int i = 0; i < n; i++) {
+            long bits = Double.doubleToLongBits(priorities[i]);
+            keys[i] = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+        }
+
+        int[] counts = new int[256];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(int) (keys[i] >>> shift) & 0xFF]++;
+            }
+            if (counts[(int) (keys[0] >>> shift) & 0xFF] == n) {
+                continue; // all keys share this byte, the pass would not move anything
+            }
+
+            int offset = 0;
+            for (int b = 0; b < 256; b++) {
+                int count = counts[b];
+                counts[b] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < n; i++) {
+                int target = counts[(int) (keys[i] >>> shift) & 0xFF]++;
+                keyBuffer[target] = keys[i];
+                elementBuffer[target] = elements[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = keyBuffer;
+            keyBuffer = swapKeys;
+            System.arraycopy(elementBuffer, 0, elements, 0, n);
+        }
+
+        for (int i = 0; i < n; i++) {
+            long key = keys[i];
+            priorities[i] = Double.longBitsToDouble(key < 0 ? key ^ Long.MIN_VALUE : ~key);
+        }
+    }
+
+    private static void insertionSort(double[] priorities, Object[] elements, int n) {
+        for (int i = 1; i < n; i++) {
+            double priority = priorities[i];
+            Object element = elements[i];
+            int j = i - 1;
+            while (j >= 0 && priorities[j] > priority) {
+                priorities[j + 1] = priorities[j];
+                elements[j + 1] = elements[j];
+                j--;
+            }
+            priorities[j + 1] = priority;
+            elements[j + 1] = element;
+        }
+    }
+}
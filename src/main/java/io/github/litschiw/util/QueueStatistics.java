@@ -0,0 +1,172 @@
+package io.github.litschiw.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters and histograms of a {@link HeadSortedQueue} or a {@link ConcurrentHeadSortedQueue}, see
+ * {@link HeadSortedQueue#enableStatistics()}.
+ * <p>
+ * Inserts, promotions and refill times are counted as they happen, in adders that any thread may read, e.g. a metrics
+ * exporter. The head size and the tail buckets are sampled from the queue when they are requested. A
+ * {@link ConcurrentHeadSortedQueue} samples them under its own locks, a {@link HeadSortedQueue} is not synchronized, so
+ * its samples have to be taken on the thread that uses the queue or under the same lock, best as a {@link #snapshot()}
+ * that is then handed to the exporter. Histograms use power of two bins: bin {@code i} counts values in
+ * {@code [2^(i-1), 2^i)}, bin 0 counts zeros.
+ */
+public final class QueueStatistics {
+
+    private static final int BINS = 64;
+
+    private final IntSupplier headSize;
+    private final Consumer<IntConsumer> bucketSizes;
+
+    private final LongAdder headInserts = new LongAdder();
+    private final LongAdder tailInserts = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+    private final LongAdder promotedElements = new LongAdder();
+    private final LongAdder refillNanos = new LongAdder();
+    private final AtomicLongArray refillNanosHistogram = new AtomicLongArray(BINS);
+
+    /**
+     * Immutable copy of all values at one point in time.
+     */
+    public record Snapshot(long headInserts, long tailInserts, long promotions, long promotedElements, long refillNanos,
+                           long[] refillNanosHistogram, int headSize, int bucketCount, long[] bucketSizeHistogram) {
+
+        /**
+         * Share of the inserts that went directly into the head, {@code NaN} before the first insert.
+         */
+        public double headInsertRatio() {
+            return (double) headInserts / (headInserts + tailInserts);
+        }
+    }
+
+    QueueStatistics(IntSupplier headSize, Consumer<IntConsumer> bucketSizes) {
+        this.headSize = headSize;
+        this.bucketSizes = bucketSizes;
+    }
+
+    void recordInserts(int head, int tail) {
+        headInserts.add(head);
+        tailInserts.add(tail);
+    }
+
+    void recordPromotion(int elements, long nanos) {
+        promotions.increment();
+        promotedElements.add(elements);
+        refillNanos.add(nanos);
+        refillNanosHistogram.incrementAndGet(bin(nanos));
+    }
+
+    private static int bin(long value) {
+        return value <= 0 ? 0 : BINS - Long.numberOfLeadingZeros(value);
+    }
+
+    public long getHeadInserts() {
+        return headInserts.sum();
+    }
+
+    public long getTailInserts() {
+        return tailInserts.sum();
+    }
+
+    /**
+     * Share of the inserts that went directly into the head, {@code NaN} before the first insert.
+     */
+    public double getHeadInsertRatio() {
+        long head = headInserts.sum();
+        return (double) head / (head + tailInserts.sum());
+    }
+
+    /**
+     * Number of buckets promoted into the head.
+     */
+    public long getPromotions() {
+        return promotions.sum();
+    }
+
+    public long getPromotedElements() {
+        return promotedElements.sum();
+    }
+
+    /**
+     * Total time spent moving promoted buckets into the head.
+     */
+    public long getRefillNanos() {
+        return refillNanos.sum();
+    }
+
+    public long[] getRefillNanosHistogram() {
+        long[] histogram = new long[BINS];
+        for (int i = 0; i < BINS; i++) {
+            histogram[i] = refillNanosHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    public int getHeadSize() {
+        return headSize.getAsInt();
+    }
+
+    /**
+     * Number of tail buckets, including empty ones.
+     */
+    public int getBucketCount() {
+        int[] buckets = {0};
+        bucketSizes.accept(bucketSize -> buckets[0]++);
+        return buckets[0];
+    }
+
+    /**
+     * Distribution of the tail bucket sizes, trailing empty bins are cut off.
+     */
+    public long[] getBucketSizeHistogram() {
+        long[] histogram = new long[BINS];
+        bucketSizes.accept(bucketSize -> histogram[bin(bucketSize)]++);
+        return trimmed(histogram);
+    }
+
+    private static long[] trimmed(long[] histogram) {
+        int used = BINS;
+        while (used > 0 && histogram[used - 1] == 0) {
+            used--;
+        }
+        return Arrays.copyOf(histogram, used);
+    }
+
+    /**
+     * Samples the queue once and copies the counters. Each counter is exact, but inserts and promotions that run
+     * concurrently may be seen by some counters and not yet by others.
+     */
+    public Snapshot snapshot() {
+        int head = headSize.getAsInt();
+        long[] histogram = new long[BINS];
+        int[] buckets = {0};
+        bucketSizes.accept(bucketSize -> {
+            histogram[bin(bucketSize)]++;
+            buckets[0]++;
+        });
+
+        return new Snapshot(headInserts.sum(), tailInserts.sum(), promotions.sum(), promotedElements.sum(),
+                refillNanos.sum(), getRefillNanosHistogram(), head, buckets[0], trimmed(histogram));
+    }
+
+    /**
+     * Sets all counters back to zero, the sampled values are not affected.
+     */
+    public void reset() {
+        headInserts.reset();
+        tailInserts.reset();
+        promotions.reset();
+        promotedElements.reset();
+        refillNanos.reset();
+        for (int i = 0; i < BINS; i++) {
+            refillNanosHistogram.set(i, 0);
+        }
+    }
+}
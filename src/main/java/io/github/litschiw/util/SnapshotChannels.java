@@ -0,0 +1,120 @@
+package io.github.litschiw.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// buffered reading and writing of primitives and codec encoded elements on byte channels, used by queue snapshots
+final class SnapshotChannels {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SnapshotChannels() {
+    }
+
+    static final class Writer {
+        private final WritableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocate(bytes);
+                }
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        // length prefixed, so that the reader can bound the decoding
+        <T> void putElement(ElementCodec<? super T> codec, T element) throws IOException {
+            int length = codec.encodedSize(element);
+            ensure(Integer.BYTES + length);
+            buffer.putInt(length);
+
+            int start = buffer.position();
+            codec.encode(element, buffer);
+            if (buffer.position() - start != length) {
+                throw new IllegalStateException("the codec wrote " + (buffer.position() - start) + " bytes but announced " + length);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    static final class Reader {
+        private final ReadableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocate(bytes).put(buffer);
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("the snapshot ended unexpectedly");
+                }
+            }
+            buffer.flip();
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        double getDouble() throws IOException {
+            ensure(Double.BYTES);
+            return buffer.getDouble();
+        }
+
+        <T> T getElement(ElementCodec<T> codec) throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                throw new IOException("corrupt snapshot, negative element length " + length);
+            }
+            ensure(length);
+
+            int end = buffer.position() + length;
+            int limit = buffer.limit();
+            buffer.limit(end);
+            T element = codec.decode(buffer);
+            if (buffer.position() != end) {
+                throw new IOException("the codec read " + (buffer.position() + length - end) + " bytes of an element of " + length);
+            }
+            buffer.limit(limit);
+            return element;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.litschiw.util;
+
+import java.util.*;
+
+/**
+ * Head of a {@link HeadSortedQueue} in {@link HeadStructure#SORTED_ARRAY} mode.
+ * <p>
+ * A promoted bucket is loaded into an array, its priorities are read once and radix sorted, and polling just advances
+ * an index. Elements offered into the head range while a run is being consumed go to a small side heap, poll and
+ * peek take whichever of the two is smaller. Removed run elements are nulled out and skipped.
+ */
+class SortedArrayHead<T extends Bucketable> extends AbstractQueue<T> {
+
+    private final PriorityQueue<T> sideHeap = new PriorityQueue<>(Comparator.comparingDouble(Bucketable::priority));
+
+    // the sorted run lives in [index, end), priorities[i] belongs to elements[i]
+    private double[] priorities = new double[0];
+    private Object[] elements = new Object[0];
+    private int index = 0;
+    private int end = 0;
+    private int runSize = 0;
+
+    @Override
+    public boolean offer(T element) {
+        return sideHeap.offer(Objects.requireNonNull(element));
+    }
+
+    /**
+     * Becomes the new sorted run if the head is empty, otherwise the elements go to the side heap.
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        if (!isEmpty()) {
+            return sideHeap.addAll(c);
+        }
+
+        int n = c.size();
+        if (elements.length < n) {
+            priorities = new double[n];
+            elements = new Object[n];
+        }
+
+        int i = 0;
+        for (T element : c) {
+            priorities[i] = element.priority();
+            elements[i] = element;
+            i++;
+        }
+
+        index = 0;
+        end = n;
+        runSize = n;
+        PrioritySort.sort(priorities, elements, n);
+        return n > 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        skipRemoved();
+        T side = sideHeap.peek();
+        if (index == end) {
+            return side;
+        }
+        if (side != null && side.priority() < priorities[index]) {
+            return side;
+        }
+        return (T) elements[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        skipRemoved();
+        T side = sideHeap.peek();
+        if (index == end || (side != null && side.priority() < priorities[index])) {
+            return sideHeap.poll();
+        }
+
+        T polled = (T) elements[index];
+        elements[index++] = null;
+        runSize--;
+        return polled;
+    }
+
+    private void skipRemoved() {
+        while (index < end && elements[index] == null) {
+            index++;
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int found = indexOf(o);
+        if (found >= 0) {
+            elements[found] = null;
+            runSize--;
+            return true;
+        }
+        return sideHeap.remove(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0 || sideHeap.contains(o);
+    }
+
+    private int indexOf(Object o) {
+        if (!(o instanceof Bucketable bucketable)) {
+            return -1;
+        }
+
+        double priority = bucketable.priority();
+
+        //lower bound of the priority in the remaining run, the priorities of removed elements are still in place
+        int low = index;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (priorities[mid] < priority) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        for (int i = low; i < end && priorities[i] == priority; i++) {
+            if (o.equals(elements[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return runSize + sideHeap.size();
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, index, end, null);
+        index = 0;
+        end = 0;
+        runSize = 0;
+        sideHeap.clear();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int cursor = index;
+            private final Iterator<T> side = sideHeap.iterator();
+            private int lastRun = -1;
+            private boolean lastFromSide = false;
+
+            @Override
+            public boolean hasNext() {
+                while (cursor < end && elements[cursor] == null) {
+                    cursor++;
+                }
+                return cursor < end || side.hasNext();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                //only the element returned last may be removed, forget where the one before came from
+                if (cursor < end) {
+                    lastRun = cursor;
+                    lastFromSide = false;
+                    return (T) elements[cursor++];
+                }
+                lastRun = -1;
+                lastFromSide = true;
+                return side.next();
+            }
+
+            @Override
+            public void remove() {
+                if (lastRun >= 0) {
+                    elements[lastRun] = null;
+                    runSize--;
+                    lastRun = -1;
+                } else if (lastFromSide) {
+                    side.remove();
+                    lastFromSide = false;
+                } else {
+                    throw new IllegalStateException();
+                }
+            }
+        };
+    }
+}
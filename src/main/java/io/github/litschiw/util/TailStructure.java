@@ -0,0 +1,17 @@
+package io.github.litschiw.util;
+
+/**
+ * Data structure that holds the tail buckets of a {@link HeadSortedQueue}.
+ */
+public enum TailStructure {
+    /**
+     * Buckets in a {@link java.util.TreeMap}, every tail insert and promotion is a tree lookup.
+     */
+    TREE_MAP,
+    /**
+     * Calendar queue: a ring of buckets indexed by the distance of the bucket id to the head, giving O(1) inserts
+     * and promotions for priorities within the ring's horizon. Buckets beyond the horizon go into an overflow
+     * {@link java.util.TreeMap} and move into the ring once the head gets close enough.
+     */
+    CALENDAR
+}
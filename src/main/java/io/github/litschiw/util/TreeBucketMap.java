@@ -0,0 +1,81 @@
+package io.github.litschiw.util;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+class TreeBucketMap<T> implements BucketMap<T> {
+
+    private final TreeMap<Integer, Collection<T>> buckets = new TreeMap<>();
+
+    private int polledBucketId;
+
+    @Override
+    public Collection<T> get(int bucketId) {
+        return buckets.get(bucketId);
+    }
+
+    @Override
+    public Collection<T> computeIfAbsent(int bucketId, IntFunction<? extends Collection<T>> mappingFunction) {
+        return computeIfAbsent(buckets, bucketId, mappingFunction);
+    }
+
+    // unlike TreeMap.computeIfAbsent, the boxed key of a hit does not escape, so the JIT can drop its allocation
+    static <T> Collection<T> computeIfAbsent(TreeMap<Integer, Collection<T>> buckets, int bucketId,
+                                             IntFunction<? extends Collection<T>> mappingFunction) {
+        Collection<T> bucket = buckets.get(bucketId);
+        if (bucket == null) {
+            bucket = mappingFunction.apply(bucketId);
+            buckets.put(bucketId, bucket);
+        }
+        return bucket;
+    }
+
+    @Override
+    public Collection<T> pollFirstBucket() {
+        if (buckets.isEmpty()) {
+            return null;
+        }
+        //removing by the stored key object neither boxes nor exports an entry like pollFirstEntry does
+        Integer bucketId = buckets.firstKey();
+        polledBucketId = bucketId;
+        return buckets.remove(bucketId);
+    }
+
+    @Override
+    public int polledBucketId() {
+        return polledBucketId;
+    }
+
+    @Override
+    public Map.Entry<Integer, Collection<T>> lastEntry() {
+        return buckets.lastEntry();
+    }
+
+    @Override
+    public Collection<T> put(int bucketId, Collection<T> bucket) {
+        return buckets.put(bucketId, bucket);
+    }
+
+    @Override
+    public Collection<T> remove(int bucketId) {
+        return buckets.remove(bucketId);
+    }
+
+    @Override
+    public void clear() {
+        buckets.clear();
+    }
+
+    @Override
+    public Iterator<Map.Entry<Integer, Collection<T>>> iterator() {
+        return buckets.entrySet().iterator();
+    }
+
+    @Override
+    public Iterator<Map.Entry<Integer, Collection<T>>> iterator(int fromId, int toId) {
+        return buckets.subMap(fromId, true, toId, true).entrySet().iterator();
+    }
+}
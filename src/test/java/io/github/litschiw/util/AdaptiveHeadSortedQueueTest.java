@@ -0,0 +1,186 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveHeadSortedQueueTest {
+
+    @RepeatedTest(20)
+    void pollsInSameOrderAsPriorityQueueWhileTheDistributionShifts() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new AdaptiveHeadSortedQueue<TestElement>(1, 32);
+        var reference = new PriorityQueue<TestElement>();
+        double now = 0;
+
+        for (int i = 0; i < 100000; i++) {
+            //the spread of new priorities changes by orders of magnitude over the run
+            double spread = Math.pow(10, (i / 20000) - 2);
+            double operation = random.nextDouble();
+            if (operation < 0.5) {
+                var element = new TestElement(now + random.nextDouble() * spread);
+                assertThat(queue.add(element)).isEqualTo(reference.add(element));
+            } else if (operation < 0.9) {
+                var polled = queue.poll();
+                assertThat(polled).isEqualTo(reference.poll());
+                if (polled != null) {
+                    now = polled.priority();
+                }
+            } else {
+                var element = new TestElement(now + random.nextDouble() * spread);
+                assertThat(queue.remove(element)).isEqualTo(reference.remove(element));
+            }
+            assertThat(queue.size()).isEqualTo(reference.size());
+            assertThat(queue.peek()).isEqualTo(reference.peek());
+        }
+    }
+
+    @RepeatedTest(20)
+    void sortsDoublesCorrectly() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(300000), -1000, 1000)
+                          .mapToObj(TestElement::new)
+                          .toArray(TestElement[]::new);
+
+        var queue = new AdaptiveHeadSortedQueue<TestElement>(100, -1000, 64);
+        Collections.addAll(queue, input);
+
+        var sortedList = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            sortedList.add(queue.poll());
+        }
+        assertThat(sortedList).hasSize(input.length);
+        assertThat(sortedList).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @Test
+    void shrinksWidthForDenseData() {
+        var queue = new AdaptiveHeadSortedQueue<TestElement>(1000, -1000, 16);
+        for (int i = 0; i < 100000; i++) {
+            queue.add(new TestElement(i / 100.0));
+        }
+        for (int i = 0; i < 50000; i++) {
+            queue.poll();
+        }
+
+        assertThat(queue.getEffectiveBucketWidth()).isLessThan(1);
+        assertThat(queue.getBucketCount()).isGreaterThan(1);
+    }
+
+    @Test
+    void growsWidthForSparseData() {
+        var queue = new AdaptiveHeadSortedQueue<TestElement>(0.001, 16);
+        for (int i = 0; i < 10000; i++) {
+            queue.add(new TestElement(i * 10.0));
+        }
+        for (int i = 0; i < 5000; i++) {
+            queue.poll();
+        }
+
+        assertThat(queue.getEffectiveBucketWidth()).isGreaterThan(1);
+    }
+
+    @Test
+    void findsElementsInSplitBuckets() {
+        var queue = new AdaptiveHeadSortedQueue<TestElement>(1000, 4);
+        for (int i = 0; i < 1000; i++) {
+            queue.add(new TestElement(1000 + i / 3.0));
+        }
+        queue.poll(); // promotes and splits the single overfull bucket
+
+        for (int i = 1; i < 1000; i++) {
+            assertThat(queue.contains(new TestElement(1000 + i / 3.0))).isTrue();
+        }
+        assertThat(queue.remove(new TestElement(1000 + 999 / 3.0))).isTrue();
+        assertThat(queue).hasSize(998);
+    }
+
+    @Test
+    void pollsInOrderAcrossSplitBorders() {
+        var queue = new AdaptiveHeadSortedQueue<TestElement>(1, 2);
+        queue.add(new TestElement(5));
+        queue.add(new TestElement(5.5));
+        queue.add(new TestElement(5.25));
+
+        assertThat(queue.poll()).isEqualTo(new TestElement(5));
+        assertThat(queue.poll()).isEqualTo(new TestElement(5.25));
+        assertThat(queue.poll()).isEqualTo(new TestElement(5.5));
+        assertThat(queue.poll()).isNull();
+    }
+
+    @RepeatedTest(20)
+    void removesInBulkFromTheQueueItself() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new AdaptiveHeadSortedQueue<TestElement>(0.1, 16);
+        var reference = new PriorityQueue<TestElement>();
+        random.doubles(5000, 0, 10).mapToObj(TestElement::new).forEach(element -> {
+            queue.add(element);
+            reference.add(element);
+        });
+        //fills the head and splits some buckets
+        for (int i = 0; i < 100; i++) {
+            assertThat(queue.poll()).isEqualTo(reference.poll());
+        }
+
+        var sample = new HashSet<TestElement>();
+        for (var element : reference) {
+            if (random.nextInt(4) == 0) {
+                sample.add(element);
+            }
+        }
+        assertThat(queue.removeAll(sample)).isTrue();
+        reference.removeAll(sample);
+        assertThat(queue).hasSize(reference.size());
+
+        double threshold = random.nextDouble(0, 10);
+        assertThat(queue.removeIf(element -> element.priority() > threshold))
+                .isEqualTo(reference.removeIf(element -> element.priority() > threshold));
+        assertThat(queue).hasSize(reference.size());
+
+        var retained = new HashSet<TestElement>();
+        for (var element : reference) {
+            if (random.nextBoolean()) {
+                retained.add(element);
+            }
+        }
+        queue.retainAll(retained);
+        reference.retainAll(retained);
+        assertThat(queue).hasSize(reference.size());
+
+        for (var iterator = queue.iterator(); iterator.hasNext(); ) {
+            var element = iterator.next();
+            if (random.nextInt(3) == 0) {
+                iterator.remove();
+                reference.remove(element);
+            }
+        }
+        assertThat(queue).hasSize(reference.size());
+
+        while (!reference.isEmpty()) {
+            assertThat(queue.poll()).isEqualTo(reference.poll());
+        }
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThatThrownBy(() -> new AdaptiveHeadSortedQueue<TestElement>(0, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveHeadSortedQueue<TestElement>(1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrentHeadSortedQueueTest {
+
+    @RepeatedTest(20)
+    void pollsInSameOrderAsPriorityQueue() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new ConcurrentHeadSortedQueue<TestElement>(0.05, -1, 4);
+        var reference = new PriorityQueue<TestElement>();
+        double now = 0;
+
+        for (int i = 0; i < 50000; i++) {
+            double operation = random.nextDouble();
+            if (operation < 0.5) {
+                var element = new TestElement(now + random.nextDouble() * 2 - 0.5);
+                assertThat(queue.offer(element)).isEqualTo(reference.add(element));
+            } else if (operation < 0.9) {
+                var polled = queue.poll();
+                assertThat(polled).isEqualTo(reference.poll());
+                if (polled != null) {
+                    now = polled.priority();
+                }
+            } else {
+                var element = new TestElement(now + random.nextDouble());
+                assertThat(queue.remove(element)).isEqualTo(reference.remove(element));
+            }
+            assertThat(queue.size()).isEqualTo(reference.size());
+            assertThat(queue.peek()).isEqualTo(reference.peek());
+        }
+    }
+
+    @RepeatedTest(10)
+    void concurrentProducersLoseNothing() throws Exception {
+        var queue = new ConcurrentHeadSortedQueue<TestElement>(0.01);
+        int producers = 8;
+        int perProducer = 20000;
+
+        var pool = Executors.newFixedThreadPool(producers);
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(new TestElement((i * producers + offset) / 1000.0));
+                }
+                return null;
+            }));
+        }
+
+        var taken = new ArrayList<TestElement>();
+        start.countDown();
+        for (int i = 0; i < producers * perProducer; i++) {
+            taken.add(queue.take());
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        assertThat(taken).hasSize(producers * perProducer).doesNotHaveDuplicates();
+        assertThat(queue).isEmpty();
+        assertThat(queue.poll()).isNull();
+    }
+
+    @RepeatedTest(10)
+    void takesInOrderOnceProducersAreDone() throws Exception {
+        var queue = new ConcurrentHeadSortedQueue<TestElement>(0.1);
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < 4; p++) {
+            var random = new Random(p);
+            var thread = new Thread(() -> random.doubles(50000, 0, 100).mapToObj(TestElement::new).forEach(queue::offer));
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        var drained = new ArrayList<TestElement>();
+        queue.drainTo(drained);
+
+        assertThat(drained).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+        assertThat(queue).isEmpty();
+    }
+
+    @Test
+    void takeBlocksUntilAnElementArrives() throws Exception {
+        var queue = new ConcurrentHeadSortedQueue<TestElement>(1);
+        var taken = new CompletableFuture<TestElement>();
+        var consumer = new Thread(() -> {
+            try {
+                taken.complete(queue.take());
+            } catch (InterruptedException e) {
+                taken.completeExceptionally(e);
+            }
+        });
+        consumer.start();
+
+        Thread.sleep(50);
+        assertThat(taken).isNotDone();
+
+        queue.put(new TestElement(42));
+        assertThat(taken.get(5, TimeUnit.SECONDS)).isEqualTo(new TestElement(42));
+    }
+
+    @Test
+    void pollTimesOutIfEmpty() throws Exception {
+        var queue = new ConcurrentHeadSortedQueue<TestElement>(1);
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void drainsAtMostMaxElements() {
+        var queue = new ConcurrentHeadSortedQueue<TestElement>(1);
+        for (int i = 9; i >= 0; i--) {
+            queue.add(new TestElement(i));
+        }
+
+        var drained = new ArrayList<TestElement>();
+        assertThat(queue.drainTo(drained, 3)).isEqualTo(3);
+        assertThat(drained).containsExactly(new TestElement(0), new TestElement(1), new TestElement(2));
+        assertThat(queue).hasSize(7);
+    }
+
+    @RepeatedTest(5)
+    void exportsStatisticsWhileProducersRun() throws Exception {
+        var queue = new ConcurrentHeadSortedQueue<TestElement>(0.01);
+        var statistics = queue.enableStatistics();
+        assertThat(queue.enableStatistics()).isSameAs(statistics);
+        int producers = 4;
+        int perProducer = 20000;
+
+        var pool = Executors.newFixedThreadPool(producers + 1);
+        var futures = new ArrayList<Future<?>>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(new TestElement((i * producers + offset) / 1000.0));
+                }
+            }));
+        }
+        futures.add(pool.submit(() -> {
+            for (int i = 0; i < producers * perProducer / 2; i++) {
+                queue.take();
+            }
+            return null;
+        }));
+
+        //an exporter sampling the live queue
+        while (!futures.stream().allMatch(Future::isDone)) {
+            var snapshot = statistics.snapshot();
+            assertThat(Arrays.stream(snapshot.bucketSizeHistogram()).sum()).isEqualTo(snapshot.bucketCount());
+            assertThat(snapshot.headInserts() + snapshot.tailInserts()).isLessThanOrEqualTo(producers * perProducer);
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        var snapshot = statistics.snapshot();
+        assertThat(snapshot.headInserts() + snapshot.tailInserts()).isEqualTo(producers * perProducer);
+        //nothing is removed from the tail, so whatever was not promoted is still in there
+        assertThat(snapshot.headSize() + snapshot.tailInserts() - snapshot.promotedElements()).isEqualTo(queue.size());
+        assertThat(snapshot.promotions()).isPositive();
+    }
+
+    @Test
+    void cannotAddNull() {
+        var queue = new ConcurrentHeadSortedQueue<TestElement>(1);
+        assertThatThrownBy(() -> queue.add(null)).isInstanceOf(NullPointerException.class);
+    }
+}
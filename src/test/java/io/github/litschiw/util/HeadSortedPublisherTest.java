@@ -0,0 +1,162 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeadSortedPublisherTest {
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<TestElement> {
+        private final List<TestElement> received = new ArrayList<>(); // signals are serialized, the latch publishes them
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Flow.Subscription subscription;
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        // requests this many elements whenever the previous ones arrived, 0 leaves the requests to the test
+        private final int refill;
+
+        private RecordingSubscriber(int refill) {
+            this.refill = refill;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (refill > 0) {
+                subscription.request(refill);
+            }
+        }
+
+        @Override
+        public void onNext(TestElement item) {
+            received.add(item);
+            if (refill > 0 && received.size() % refill == 0) {
+                subscription.request(refill);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+
+    @Test
+    void emitsOnlyOnDemandInPriorityOrder() {
+        var publisher = new HeadSortedPublisher<>(new HeadSortedQueue<TestElement>(0.1), Runnable::run);
+        var random = new Random(42);
+        var reference = new PriorityQueue<TestElement>();
+        for (int i = 0; i < 1000; i++) {
+            var element = new TestElement(random.nextDouble() * 10);
+            publisher.offer(element);
+            reference.add(element);
+        }
+
+        var subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        assertThat(subscriber.received).isEmpty();
+
+        subscriber.subscription.request(10);
+        var expected = new ArrayList<TestElement>();
+        for (int i = 0; i < 10; i++) {
+            expected.add(reference.poll());
+        }
+        assertThat(subscriber.received).containsExactlyElementsOf(expected);
+        assertThat(publisher.size()).isEqualTo(990);
+
+        subscriber.subscription.request(995);
+        while (!reference.isEmpty()) {
+            expected.add(reference.poll());
+        }
+        assertThat(subscriber.received).containsExactlyElementsOf(expected);
+
+        //the remaining demand of 5 is served by the next offers
+        publisher.offer(new TestElement(3));
+        assertThat(subscriber.received).hasSize(1001).last().isEqualTo(new TestElement(3));
+
+        assertThat(subscriber.completed).isFalse();
+        publisher.close();
+        assertThat(subscriber.completed).isTrue();
+        assertThat(subscriber.error).isNull();
+    }
+
+    @Test
+    void rejectsNonPositiveRequests() {
+        var publisher = new HeadSortedPublisher<>(new HeadSortedQueue<TestElement>(1), Runnable::run);
+        publisher.offer(new TestElement(1));
+
+        var subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+        assertThat(subscriber.received).isEmpty();
+        assertThat(publisher.size()).isEqualTo(1);
+    }
+
+    @Test
+    void passesCloseErrorsOn() {
+        var publisher = new HeadSortedPublisher<>(new HeadSortedQueue<TestElement>(1), Runnable::run);
+        var subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        publisher.offer(new TestElement(1));
+
+        var failure = new IllegalStateException("upstream failed");
+        publisher.closeExceptionally(failure);
+        assertThat(subscriber.error).isSameAs(failure);
+        assertThat(publisher.size()).isZero();
+    }
+
+    @RepeatedTest(5)
+    void concurrentProducersReachEverySubscriberOnce() throws Exception {
+        var signals = Executors.newCachedThreadPool();
+        var publisher = new HeadSortedPublisher<>(new HeadSortedQueue<TestElement>(0.01), signals);
+        int producers = 4;
+        int perProducer = 10000;
+
+        var subscribers = new ArrayList<RecordingSubscriber>();
+        for (int s = 0; s < 3; s++) {
+            var subscriber = new RecordingSubscriber(1 + s * 7);
+            subscribers.add(subscriber);
+            publisher.subscribe(subscriber);
+        }
+
+        var pool = Executors.newFixedThreadPool(producers);
+        var producing = new ArrayList<Future<?>>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p;
+            producing.add(pool.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    publisher.offer(new TestElement((i * producers + offset) / 1000.0));
+                }
+            }));
+        }
+        for (var future : producing) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        publisher.close();
+
+        var received = new ArrayList<TestElement>();
+        for (var subscriber : subscribers) {
+            assertThat(subscriber.done.await(60, TimeUnit.SECONDS)).isTrue();
+            assertThat(subscriber.completed).isTrue();
+            received.addAll(subscriber.received);
+        }
+        signals.shutdown();
+        assertThat(received).hasSize(producers * perProducer);
+        assertThat(new HashSet<>(received)).hasSize(producers * perProducer);
+    }
+}
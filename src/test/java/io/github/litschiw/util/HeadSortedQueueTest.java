@@ -2,9 +2,21 @@ package io.github.litschiw.util;
 
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -121,6 +133,955 @@ class HeadSortedQueueTest {
     }
 
 
+    @RepeatedTest(20)
+    void pollsInOrderWithInterleavedOperations() {
+        assertPollsInOrderWithInterleavedOperations(new HeadSortedQueue<>(0.05, -1, 10));
+    }
+
+    @RepeatedTest(20)
+    void calendarTailPollsInOrderWithInterleavedOperations() {
+        assertPollsInOrderWithInterleavedOperations(new HeadSortedQueue<>(0.05, -1, 16, TailStructure.CALENDAR));
+    }
+
+    @RepeatedTest(20)
+    void sortedArrayHeadPollsInOrderWithInterleavedOperations() {
+        assertPollsInOrderWithInterleavedOperations(
+                new HeadSortedQueue<>(0.05, -1, 0, TailStructure.TREE_MAP, HeadStructure.SORTED_ARRAY));
+    }
+
+    @RepeatedTest(20)
+    void pooledBucketsPollInOrderWithInterleavedOperations() {
+        assertPollsInOrderWithInterleavedOperations(
+                new HeadSortedQueue<>(0.05, -1, 16, TailStructure.CALENDAR, HeadStructure.BINARY_HEAP, true));
+    }
+
+    @RepeatedTest(20)
+    void bagBucketsPollInOrderWithInterleavedOperations() {
+        assertPollsInOrderWithInterleavedOperations(new HeadSortedQueue<>(0.05, -1, 16, TailStructure.CALENDAR,
+                HeadStructure.BINARY_HEAP, BucketStructure.BAG, new Random().nextBoolean()));
+    }
+
+    @Test
+    void bagBucketsKeepDuplicates() {
+        var queue = new HeadSortedQueue<TestElement>(1, 0, 0, TailStructure.TREE_MAP, HeadStructure.BINARY_HEAP,
+                BucketStructure.BAG, false);
+        for (int i = 0; i < 3; i++) {
+            assertThat(queue.add(new TestElement(5))).isTrue();
+            assertThat(queue.add(new TestElement(7))).isTrue();
+        }
+        assertThat(queue).hasSize(6);
+
+        assertThat(queue.remove(new TestElement(5))).isTrue();
+        assertThat(queue).hasSize(5);
+        assertThat(queue.contains(new TestElement(5))).isTrue();
+
+        var iterator = queue.unorderedIterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().priority() == 7) {
+                iterator.remove();
+            }
+        }
+        assertThat(queue).containsExactly(new TestElement(5), new TestElement(5));
+        assertThat(queue.contains(new TestElement(7))).isFalse();
+
+        assertThat(queue.poll()).isEqualTo(new TestElement(5));
+        assertThat(queue.poll()).isEqualTo(new TestElement(5));
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    void reusesPromotedBuckets() {
+        var queue = new HeadSortedQueue<TestElement>(1, 0, 4, TailStructure.CALENDAR, HeadStructure.BINARY_HEAP, true);
+        assertThat(queue.pooledBucketCount()).isEqualTo(4);
+
+        for (int i = 1; i <= 4; i++) {
+            queue.add(new TestElement(i));
+        }
+        assertThat(queue.pooledBucketCount()).isZero();
+
+        for (int i = 1; i <= 4; i++) {
+            assertThat(queue.poll()).isEqualTo(new TestElement(i));
+        }
+        assertThat(queue.pooledBucketCount()).isEqualTo(4);
+
+        queue.add(new TestElement(7));
+        assertThat(queue.pooledBucketCount()).isEqualTo(3);
+        assertThat(queue).containsExactly(new TestElement(7));
+    }
+
+    @Test
+    void boundsTheBucketPool() {
+        var queue = new HeadSortedQueue<TestElement>(1, 0, 4, TailStructure.TREE_MAP, HeadStructure.BINARY_HEAP, true);
+        //the pre allocated tree buckets are the pooled containers, they are not allocated twice
+        assertThat(queue.pooledBucketCount()).isZero();
+        for (int i = 1; i <= 4; i++) {
+            queue.add(new TestElement(i));
+        }
+        assertThat(pollAll(queue)).hasSize(4);
+        assertThat(queue.pooledBucketCount()).isEqualTo(4);
+
+        for (int i = 0; i < 1000; i++) {
+            queue.add(new TestElement(10 + i));
+        }
+        pollAll(queue);
+        assertThat(queue.pooledBucketCount()).isEqualTo(64);
+
+        //a burst into a single bucket does not stay in the pool
+        int pooled = queue.pooledBucketCount();
+        for (int i = 0; i < 5000; i++) {
+            queue.add(new TestElement(2000 + i / 5000.0));
+        }
+        assertThat(queue.pooledBucketCount()).isEqualTo(pooled - 1);
+        pollAll(queue);
+        assertThat(queue.pooledBucketCount()).isEqualTo(pooled - 1);
+    }
+
+    @RepeatedTest(20)
+    void sortedArrayHeadSortsDoublesCorrectly() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(300000), -1e6, 1e6)
+                          .mapToObj(TestElement::new)
+                          .toArray(TestElement[]::new);
+
+        var queue = new HeadSortedQueue<TestElement>(1000, -1e6, 0, TailStructure.TREE_MAP, HeadStructure.SORTED_ARRAY);
+        Collections.addAll(queue, input);
+
+        var sortedList = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            sortedList.add(queue.poll());
+        }
+        assertThat(sortedList).hasSize(input.length);
+        assertThat(sortedList).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @Test
+    void sortedArrayHeadRemovesTheSideElementLastIterated() {
+        var queue = new HeadSortedQueue<TestElement>(1, 0, 0, TailStructure.TREE_MAP, HeadStructure.SORTED_ARRAY);
+        queue.add(new TestElement(5.1));
+        queue.add(new TestElement(5.2));
+        queue.poll(); // 5.2 is left in the sorted run
+        queue.add(new TestElement(5.5)); // goes to the side heap
+
+        assertThat(queue.removeIf(element -> element.priority() == 5.5)).isTrue();
+        assertThat(pollAll(queue)).containsExactly(new TestElement(5.2));
+    }
+
+    @RepeatedTest(20)
+    void sortedArrayHeadRemovesThroughIteratorsWithRunAndSideElements() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new HeadSortedQueue<TestElement>(1, 0, 0, TailStructure.TREE_MAP, HeadStructure.SORTED_ARRAY);
+        var reference = new ArrayList<TestElement>();
+        for (int i = 0; i < 200; i++) {
+            var element = new TestElement(5 + random.nextDouble());
+            queue.add(element);
+            reference.add(element);
+        }
+        reference.remove(queue.poll()); // promotes the bucket into the sorted run
+        for (int i = 0; i < 200; i++) {
+            var element = new TestElement(5 + random.nextDouble());
+            queue.add(element);
+            reference.add(element);
+        }
+
+        double threshold = random.nextDouble();
+        var iterator = queue.unorderedIterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().priority() - 5 < threshold / 2) {
+                iterator.remove();
+            }
+        }
+        queue.removeIf(element -> element.priority() - 5 > 1 - threshold / 2);
+        reference.removeIf(element -> element.priority() - 5 < threshold / 2 || element.priority() - 5 > 1 - threshold / 2);
+
+        reference.sort(Comparator.comparingDouble(TestElement::priority));
+        assertThat(pollAll(queue)).containsExactlyElementsOf(reference);
+    }
+
+    private static void assertPollsInOrderWithInterleavedOperations(HeadSortedQueue<TestElement> queue) {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var reference = new PriorityQueue<TestElement>();
+        double now = 0;
+
+        for (int i = 0; i < 100000; i++) {
+            double operation = random.nextDouble();
+            if (operation < 0.5) {
+                //mostly near future, sometimes far beyond the calendar horizon or before the current head
+                var element = new TestElement(now + random.nextDouble() * (random.nextInt(10) == 0 ? 100 : 2) - 0.5);
+                assertThat(queue.add(element)).isEqualTo(reference.add(element));
+            } else if (operation < 0.9) {
+                var polled = queue.poll();
+                assertThat(polled).isEqualTo(reference.poll());
+                if (polled != null) {
+                    now = polled.priority();
+                }
+            } else {
+                var element = new TestElement(now + random.nextDouble());
+                assertThat(queue.remove(element)).isEqualTo(reference.remove(element));
+            }
+            assertThat(queue.size()).isEqualTo(reference.size());
+            assertThat(queue.peek()).isEqualTo(reference.peek());
+        }
+    }
+
+    @RepeatedTest(20)
+    void calendarTailSortsIntsCorrectly() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.ints(random.nextInt(300000))
+                          .distinct()
+                          .mapToObj(TestElement::new)
+                          .toArray(TestElement[]::new);
+
+        var queue = new HeadSortedQueue<TestElement>(40000000, Integer.MIN_VALUE, 8, TailStructure.CALENDAR);
+        Collections.addAll(queue, input);
+
+        var sortedList = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            sortedList.add(queue.poll());
+        }
+        assertThat(sortedList).hasSize(input.length);
+        assertThat(sortedList).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @Test
+    void peeksIntoTailIfHeadIsEmpty() {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        queue.add(new TestElement(5));
+        queue.add(new TestElement(7));
+
+        assertThat(queue.peek()).isEqualTo(new TestElement(5));
+        assertThat(queue.poll()).isEqualTo(new TestElement(5));
+        assertThat(queue.poll()).isEqualTo(new TestElement(7));
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    void calendarTailNeedsAHorizon() {
+        assertThatThrownBy(() -> new HeadSortedQueue<TestElement>(1, 0, 0, TailStructure.CALENDAR))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @RepeatedTest(20)
+    void addsBatchesLikeSingleElements() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(100000), -10, 10)
+                          .mapToObj(TestElement::new)
+                          .toList();
+
+        var batched = new HeadSortedQueue<TestElement>(0.1);
+        var single = new HeadSortedQueue<TestElement>(0.1);
+        batched.add(new TestElement(-5));
+        single.add(new TestElement(-5));
+        batched.addAll(input.subList(0, input.size() / 2));
+        batched.addAll(new ArrayDeque<>(input.subList(input.size() / 2, input.size())));
+        input.forEach(single::add);
+
+        assertThat(batched.size()).isEqualTo(single.size());
+        while (!single.isEmpty()) {
+            assertThat(batched.poll()).isEqualTo(single.poll());
+        }
+        assertThat(batched.poll()).isNull();
+    }
+
+    @RepeatedTest(20)
+    void pollsBatchesInOrder() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(100000))
+                          .mapToObj(TestElement::new)
+                          .toList();
+
+        var queue = new HeadSortedQueue<TestElement>(0.01, input);
+
+        var polled = new ArrayList<TestElement>();
+        while (!queue.isEmpty()) {
+            var batch = queue.pollBatch(random.nextInt(1, 500));
+            assertThat(batch).isNotEmpty();
+            polled.addAll(batch);
+        }
+
+        assertThat(polled).hasSize(input.size());
+        assertThat(polled).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @Test
+    void drainsAtMostMaxElements() {
+        var queue = new HeadSortedQueue<TestElement>(2);
+        for (int i = 9; i >= 0; i--) {
+            queue.add(new TestElement(i));
+        }
+
+        var drained = new ArrayList<TestElement>();
+        assertThat(queue.drainTo(drained, 5)).isEqualTo(5);
+        assertThat(drained).containsExactly(IntStream.range(0, 5).mapToObj(TestElement::new).toArray(TestElement[]::new));
+        assertThat(queue).hasSize(5);
+        assertThat(queue.peek()).isEqualTo(new TestElement(5));
+
+        assertThat(queue.drainTo(drained, 100)).isEqualTo(5);
+        assertThat(queue).isEmpty();
+        assertThat(queue.pollBatch(3)).isEmpty();
+    }
+
+    @RepeatedTest(20)
+    void iteratesInPollOrder() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(100000), -10, 10)
+                          .mapToObj(TestElement::new)
+                          .toList();
+
+        var queue = new HeadSortedQueue<TestElement>(0.1, -10, 64, random.nextBoolean() ? TailStructure.TREE_MAP : TailStructure.CALENDAR);
+        queue.addAll(input);
+        for (int i = random.nextInt(Math.max(1, input.size() / 2)); i > 0; i--) {
+            queue.poll(); // also leaves elements in the head
+        }
+
+        var iterated = new ArrayList<TestElement>(queue.size());
+        queue.iterator().forEachRemaining(iterated::add);
+
+        var polled = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            polled.add(queue.poll());
+        }
+        assertThat(iterated).isEqualTo(polled);
+    }
+
+    @Test
+    void removesThroughOrderedIterator() {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        for (int i = 0; i < 20; i++) {
+            queue.add(new TestElement(i / 2.0));
+        }
+
+        for (var it = queue.iterator(); it.hasNext(); ) {
+            if (it.next().priority() % 1 == 0) {
+                it.remove();
+            }
+        }
+
+        assertThat(queue).hasSize(10);
+        assertThat(queue).allMatch(element -> element.priority() % 1 != 0);
+        assertThat(queue.poll()).isEqualTo(new TestElement(0.5));
+    }
+
+    @RepeatedTest(20)
+    void unorderedIteratorVisitsAndRemovesEveryElement() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(100000))
+                          .mapToObj(TestElement::new)
+                          .collect(Collectors.toSet());
+
+        var queue = new HeadSortedQueue<TestElement>(0.01, 0, 0, TailStructure.TREE_MAP,
+                random.nextBoolean() ? HeadStructure.BINARY_HEAP : HeadStructure.SORTED_ARRAY);
+        queue.addAll(input);
+        queue.poll();
+        queue.add(new TestElement(-1)); // lands in the side heap of a sorted array head
+
+        var visited = new HashSet<TestElement>();
+        queue.unorderedIterator().forEachRemaining(visited::add);
+        assertThat(visited).hasSize(queue.size());
+        assertThat(queue.unorderedSpliterator().estimateSize()).isEqualTo(queue.size());
+
+        assertThat(queue.removeIf(element -> element.priority() < 0.5)).isEqualTo(!input.isEmpty());
+        assertThat(queue.size()).isEqualTo((int) visited.stream().filter(element -> element.priority() >= 0.5).count());
+
+        var sortedList = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            sortedList.add(queue.poll());
+        }
+        assertThat(sortedList).allMatch(element -> element.priority() >= 0.5);
+        assertThat(sortedList).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @RepeatedTest(20)
+    void parallelStreamsSeeEveryElementInOrder() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(200000))
+                          .mapToObj(TestElement::new)
+                          .toList();
+
+        var queue = new HeadSortedQueue<TestElement>(0.001, input);
+        queue.poll();
+
+        var expected = new ArrayList<TestElement>(queue.size());
+        queue.iterator().forEachRemaining(expected::add);
+
+        assertThat(queue.parallelStream().toList()).isEqualTo(expected);
+        assertThat(queue.parallelStream().filter(element -> element.priority() < 0.5).count())
+                .isEqualTo(expected.stream().filter(element -> element.priority() < 0.5).count());
+        assertThat(StreamSupport.stream(queue.unorderedSpliterator(), true).collect(Collectors.toSet()))
+                .isEqualTo(new HashSet<>(expected));
+    }
+
+    @Test
+    void splitsOnBucketBoundaries() {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        for (int i = 0; i < 1000; i++) {
+            queue.add(new TestElement(i / 10.0));
+        }
+
+        var suffix = queue.spliterator();
+        assertThat(suffix.estimateSize()).isEqualTo(1000);
+        assertThat(suffix.hasCharacteristics(Spliterator.SIZED)).isTrue();
+
+        var prefix = suffix.trySplit();
+        assertThat(prefix).isNotNull();
+        assertThat(prefix.estimateSize()).isEqualTo(500);
+        assertThat(suffix.estimateSize()).isEqualTo(500);
+
+        var first = new ArrayList<TestElement>();
+        prefix.forEachRemaining(first::add);
+        assertThat(first).hasSize(500);
+        assertThat(first).allMatch(element -> element.priority() < 50);
+    }
+
+    @RepeatedTest(20)
+    void removesInParallelLikeSequentially() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(200000))
+                          .mapToObj(TestElement::new)
+                          .toList();
+
+        var sequential = new HeadSortedQueue<TestElement>(0.001, input);
+        var parallel = new HeadSortedQueue<TestElement>(0.001, input);
+        double threshold = random.nextDouble();
+
+        assertThat(parallel.parallelRemoveIf(element -> element.priority() < threshold))
+                .isEqualTo(sequential.removeIf(element -> element.priority() < threshold));
+        assertThat(parallel).hasSameSizeAs(sequential);
+        while (!sequential.isEmpty()) {
+            assertThat(parallel.poll()).isEqualTo(sequential.poll());
+        }
+        assertThat(parallel.poll()).isNull();
+    }
+
+    private static HeadSortedQueue<TestElement> randomQueue(Random random, double bucketSize) {
+        return new HeadSortedQueue<>(bucketSize, 0, 64,
+                random.nextBoolean() ? TailStructure.TREE_MAP : TailStructure.CALENDAR,
+                random.nextBoolean() ? HeadStructure.BINARY_HEAP : HeadStructure.SORTED_ARRAY,
+                random.nextBoolean() ? BucketStructure.HASH_SET : BucketStructure.BAG, random.nextBoolean());
+    }
+
+    private static List<TestElement> pollAll(Queue<TestElement> queue) {
+        var polled = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            polled.add(queue.poll());
+        }
+        return polled;
+    }
+
+    @RepeatedTest(20)
+    void transfersLikeAddAll() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var target = randomQueue(random, 0.01);
+        var source = randomQueue(random, 0.01);
+        var reference = new PriorityQueue<TestElement>();
+        for (var queue : List.of(target, source)) {
+            var elements = random.doubles(random.nextInt(50000), 0, 10).mapToObj(TestElement::new).toList();
+            queue.addAll(elements);
+            reference.addAll(elements);
+            //moves the head borders apart
+            for (int i = random.nextInt(Math.max(1, elements.size() / 2)); i > 0; i--) {
+                reference.remove(queue.poll());
+            }
+        }
+
+        int expectedGrowth = source.size();
+        assertThat(target.transferFrom(source)).isEqualTo(expectedGrowth);
+        assertThat(source).isEmpty();
+        assertThat(target).hasSameSizeAs(reference);
+        assertThat(pollAll(target)).containsExactlyElementsOf(pollAll(reference));
+
+        //the emptied source keeps working
+        source.add(new TestElement(0.5));
+        source.add(new TestElement(7.5));
+        assertThat(pollAll(source)).containsExactly(new TestElement(0.5), new TestElement(7.5));
+    }
+
+    @Test
+    void mergesEqualElementsOnTransferIntoSetBuckets() {
+        var target = new HeadSortedQueue<TestElement>(1);
+        var source = new HeadSortedQueue<TestElement>(1, 0, 0, TailStructure.TREE_MAP, HeadStructure.BINARY_HEAP,
+                BucketStructure.BAG, false);
+        target.add(new TestElement(5));
+        source.add(new TestElement(5));
+        source.add(new TestElement(5));
+        source.add(new TestElement(6));
+
+        assertThat(target.transferFrom(source)).isEqualTo(1);
+        assertThat(target).containsExactly(new TestElement(5), new TestElement(6));
+        assertThatThrownBy(() -> target.transferFrom(new HeadSortedQueue<>(2))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> target.transferFrom(target)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @RepeatedTest(20)
+    void splitsAtPriority() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var lower = randomQueue(random, 0.01);
+        var reference = new PriorityQueue<TestElement>();
+        random.doubles(random.nextInt(50000), 0, 10).mapToObj(TestElement::new).forEach(element -> {
+            lower.add(element);
+            reference.add(element);
+        });
+        for (int i = random.nextInt(Math.max(1, reference.size() / 2)); i > 0; i--) {
+            reference.remove(lower.poll());
+        }
+
+        double from = random.nextDouble(-1, 11);
+        var upper = lower.split(from);
+        assertThat(lower.size() + upper.size()).isEqualTo(reference.size());
+
+        var expected = pollAll(reference);
+        var expectedLower = expected.stream().filter(element -> element.priority() < from).toList();
+        assertThat(lower).hasSameSizeAs(expectedLower);
+
+        //both halves keep accepting elements on either side of the split
+        lower.add(new TestElement(from + 20));
+        upper.add(new TestElement(-1));
+        assertThat(pollAll(lower)).containsExactlyElementsOf(concat(expectedLower, List.of(new TestElement(from + 20))));
+        assertThat(pollAll(upper)).containsExactlyElementsOf(
+                concat(List.of(new TestElement(-1)), expected.subList(expectedLower.size(), expected.size())));
+    }
+
+    @Test
+    void splitAndTransferKeepTheBoundAndTheStatistics() {
+        var evicted = new ArrayList<TestElement>();
+        var lower = new HeadSortedQueue<TestElement>(1);
+        lower.setMaximumSize(10, evicted::add);
+        var statistics = lower.enableStatistics();
+        for (int i = 0; i < 10; i++) {
+            lower.add(new TestElement(i));
+        }
+
+        //bucket 4 is split, buckets 5 to 9 change owner as a whole
+        var upper = lower.split(4.5);
+        assertThat(upper).hasSize(5);
+        assertThat(upper.getMaximumSize()).isEqualTo(10);
+        assertThat(upper.getStatistics()).isNotNull().isNotSameAs(statistics);
+        assertThat(upper.getStatistics().getHeadInserts() + upper.getStatistics().getTailInserts()).isEqualTo(5);
+
+        for (int i = 0; i < 5; i++) {
+            upper.add(new TestElement(10 + i));
+        }
+        assertThat(upper.offer(new TestElement(20))).isFalse();
+        assertThat(upper.offer(new TestElement(5.5))).isTrue();
+        assertThat(upper).hasSize(10);
+        assertThat(evicted).containsExactly(new TestElement(14));
+
+        long insertsBefore = statistics.getHeadInserts() + statistics.getTailInserts();
+        var source = new HeadSortedQueue<TestElement>(1);
+        for (int i = 0; i < 4; i++) {
+            source.add(new TestElement(0.5 + i * 10));
+        }
+        assertThat(lower.transferFrom(source)).isEqualTo(4);
+        assertThat(statistics.getHeadInserts() + statistics.getTailInserts()).isEqualTo(insertsBefore + 4);
+    }
+
+    private static double randomBound(Random random) {
+        return switch (random.nextInt(6)) {
+            case 0 -> Double.NEGATIVE_INFINITY;
+            case 1 -> Double.POSITIVE_INFINITY;
+            case 2 -> Math.floor(random.nextDouble(-1, 11)); // on a bucket border
+            default -> random.nextDouble(-1, 11);
+        };
+    }
+
+    @RepeatedTest(20)
+    void countsAndRemovesRangesThroughTheBuckets() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = randomQueue(random, 0.5);
+        var reference = new ArrayList<TestElement>();
+        random.doubles(random.nextInt(50000), 0, 10).mapToObj(TestElement::new).forEach(element -> {
+            queue.add(element);
+            reference.add(element);
+        });
+        for (int i = random.nextInt(Math.max(1, reference.size() / 2)); i > 0; i--) {
+            reference.remove(queue.poll());
+        }
+        reference.sort(Comparator.comparingDouble(TestElement::priority));
+
+        double first = randomBound(random);
+        double second = randomBound(random);
+        double from = Math.min(first, second);
+        double to = Math.max(first, second);
+        var inRange = reference.stream()
+                               .filter(element -> element.priority() >= from && element.priority() < to)
+                               .toList();
+
+        assertThat(queue.countInRange(from, to)).isEqualTo(inRange.size());
+        assertThat(queue.rangeView(from, to)).containsExactlyElementsOf(inRange);
+
+        assertThat(queue.removeRange(from, to)).isEqualTo(inRange.size());
+        assertThat(queue.countInRange(from, to)).isZero();
+        assertThat(queue).hasSize(reference.size() - inRange.size());
+
+        var remaining = new HashSet<>(reference);
+        inRange.forEach(remaining::remove);
+        var polled = pollAll(queue);
+        assertThat(new HashSet<>(polled)).isEqualTo(remaining);
+        assertThat(polled).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @RepeatedTest(20)
+    void pollsAllBelowInOrder() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = randomQueue(random, 0.01);
+        var reference = new PriorityQueue<TestElement>();
+        random.doubles(random.nextInt(100000), 0, 10).mapToObj(TestElement::new).forEach(element -> {
+            queue.add(element);
+            reference.add(element);
+        });
+
+        double now = 0;
+        while (!reference.isEmpty()) {
+            now += random.nextDouble() * 2;
+            var expected = new ArrayList<TestElement>();
+            while (!reference.isEmpty() && reference.peek().priority() < now) {
+                expected.add(reference.poll());
+            }
+            assertThat(queue.pollAllBelow(now)).containsExactlyElementsOf(expected);
+            assertThat(queue).hasSameSizeAs(reference);
+
+            var late = new TestElement(now + random.nextDouble());
+            queue.add(late);
+            reference.add(late);
+            if (random.nextInt(4) == 0) {
+                reference.poll();
+                queue.poll();
+            }
+        }
+    }
+
+    @Test
+    void rangeViewsAreLive() {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        for (int i = 0; i < 10; i++) {
+            queue.add(new TestElement(i));
+        }
+
+        var head = queue.headView(5);
+        var tail = queue.tailView(5);
+        assertThat(head).hasSize(5);
+        assertThat(tail).containsExactly(new TestElement(5), new TestElement(6), new TestElement(7), new TestElement(8),
+                new TestElement(9));
+
+        assertThat(tail.contains(new TestElement(2))).isFalse();
+        assertThat(tail.remove(new TestElement(2))).isFalse();
+        assertThat(head.remove(new TestElement(2))).isTrue();
+        queue.add(new TestElement(4.5));
+        assertThat(head).containsExactly(new TestElement(0), new TestElement(1), new TestElement(3), new TestElement(4),
+                new TestElement(4.5));
+
+        tail.clear();
+        assertThat(queue).hasSize(5);
+        assertThat(tail).isEmpty();
+        assertThatThrownBy(() -> head.add(new TestElement(1.5))).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> queue.rangeView(3, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> queue.countInRange(Double.NaN, 2)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @RepeatedTest(20)
+    void keepsTheSmallestElementsWhenBounded() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        //with the wide buckets everything stays in the head for a while
+        var queue = randomQueue(random, random.nextBoolean() ? 0.01 : 100);
+        var evicted = new ArrayList<TestElement>();
+        int maximumSize = 1 + random.nextInt(500);
+        queue.setMaximumSize(maximumSize, evicted::add);
+        var reference = new TreeSet<TestElement>();
+        double now = 0;
+
+        for (int i = 0; i < 20000; i++) {
+            if (random.nextDouble() < 0.8) {
+                var element = new TestElement(now + random.nextDouble() * 2);
+                boolean full = reference.size() == maximumSize;
+                if (queue.offer(element)) {
+                    reference.add(element);
+                } else {
+                    assertThat(full).isTrue();
+                    assertThat(element.priority()).isGreaterThanOrEqualTo(reference.last().priority());
+                }
+                for (var removed : evicted) {
+                    assertThat(reference.remove(removed)).isTrue();
+                    assertThat(removed.priority()).isGreaterThanOrEqualTo(reference.last().priority());
+                }
+                evicted.clear();
+            } else if (random.nextDouble() < 0.7 || reference.isEmpty()) {
+                var polled = queue.poll();
+                assertThat(polled).isEqualTo(reference.pollFirst());
+                if (polled != null) {
+                    now = polled.priority();
+                }
+            } else {
+                //empties the last bucket from time to time
+                assertThat(queue.remove(reference.pollLast())).isTrue();
+            }
+            assertThat(queue).hasSize(reference.size());
+        }
+        assertThat(pollAll(queue)).containsExactlyElementsOf(reference);
+    }
+
+    @Test
+    void evictsWholeBucketsWhenShrunk() {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        for (int i = 0; i < 20; i++) {
+            queue.add(new TestElement(i / 2.0));
+        }
+
+        var evicted = new ArrayList<TestElement>();
+        queue.setMaximumSize(7, evicted::add);
+        assertThat(queue.getMaximumSize()).isEqualTo(7);
+        assertThat(evicted).hasSize(13);
+        assertThat(pollAll(queue)).extracting(TestElement::priority).containsExactly(0.0, 0.5, 1.0, 1.5, 2.0, 2.5, 3.0);
+
+        for (int i = 0; i < 7; i++) {
+            queue.add(new TestElement(i));
+        }
+        evicted.clear();
+        assertThat(queue.offer(new TestElement(42))).isFalse();
+        assertThat(queue.offer(new TestElement(6.5))).isFalse();
+        assertThat(queue.offer(new TestElement(0.5))).isTrue();
+        assertThat(evicted).containsExactly(new TestElement(6));
+        assertThat(queue.addAll(List.of(new TestElement(-1), new TestElement(100)))).isTrue();
+        assertThat(evicted).containsExactly(new TestElement(6), new TestElement(5));
+        assertThat(queue).hasSize(7);
+
+        assertThatThrownBy(() -> queue.setMaximumSize(0, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsBehindTheLastBucketAfterItWasRemoved() {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        var evicted = new ArrayList<TestElement>();
+        queue.setMaximumSize(5, evicted::add);
+        for (double priority : new double[]{0.5, 2, 3, 4, 9}) {
+            queue.add(new TestElement(priority));
+        }
+        queue.remove(new TestElement(9));
+        queue.add(new TestElement(5));
+
+        //bucket 9 is gone, so both land behind the last bucket
+        assertThat(queue.offer(new TestElement(7))).isFalse();
+        assertThat(queue.offer(new TestElement(8))).isFalse();
+        assertThat(evicted).isEmpty();
+
+        assertThat(queue.offer(new TestElement(4.5))).isTrue();
+        assertThat(evicted).containsExactly(new TestElement(5));
+        //the largest element in front of the last bucket is inserted and evicted again
+        assertThat(queue.offer(new TestElement(4.75))).isFalse();
+        assertThat(evicted).containsExactly(new TestElement(5));
+        assertThat(pollAll(queue)).extracting(TestElement::priority).containsExactly(0.5, 2.0, 3.0, 4.0, 4.5);
+    }
+
+    @Test
+    void rejectsAtTheHeadMaximumWithoutATail() {
+        var queue = new HeadSortedQueue<TestElement>(100);
+        var evicted = new ArrayList<TestElement>();
+        queue.setMaximumSize(3, evicted::add);
+        for (double priority : new double[]{1, 5, 3}) {
+            queue.add(new TestElement(priority));
+        }
+
+        assertThat(queue.offer(new TestElement(5))).isFalse();
+        assertThat(queue.offer(new TestElement(7))).isFalse();
+        assertThat(queue.offer(new TestElement(2))).isTrue();
+        assertThat(evicted).containsExactly(new TestElement(5));
+        //3 is the largest element now
+        assertThat(queue.offer(new TestElement(4))).isFalse();
+        assertThat(queue.offer(new TestElement(2.5))).isTrue();
+        assertThat(evicted).containsExactly(new TestElement(5), new TestElement(3));
+        assertThat(pollAll(queue)).extracting(TestElement::priority).containsExactly(1.0, 2.0, 2.5);
+    }
+
+    private static List<TestElement> concat(List<TestElement> first, List<TestElement> second) {
+        var all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    @RepeatedTest(20)
+    void restoresSnapshotsExactly() throws IOException {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var original = new HeadSortedQueue<TestElement>(0.01, 0, 64,
+                random.nextBoolean() ? TailStructure.TREE_MAP : TailStructure.CALENDAR,
+                random.nextBoolean() ? HeadStructure.BINARY_HEAP : HeadStructure.SORTED_ARRAY,
+                random.nextBoolean() ? BucketStructure.HASH_SET : BucketStructure.BAG, false);
+        random.doubles(random.nextInt(100000)).mapToObj(TestElement::new).forEach(original::add);
+        for (int i = random.nextInt(Math.max(1, original.size())); i > 0; i--) {
+            original.poll(); // moves the head border
+        }
+        if (random.nextBoolean()) {
+            original.setMaximumSize(1 + random.nextInt(Math.max(1, original.size())), null);
+        }
+
+        var bytes = new ByteArrayOutputStream();
+        original.writeSnapshot(Channels.newChannel(bytes), TestElement.CODEC);
+        var restored = HeadSortedQueue.readSnapshot(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), TestElement.CODEC);
+
+        assertThat(restored).hasSameSizeAs(original);
+        assertThat(restored.getMaximumSize()).isEqualTo(original.getMaximumSize());
+        //both queues have to keep routing new elements the same way, including ones below the restored head border
+        for (int i = 0; i < 10000; i++) {
+            if (random.nextBoolean()) {
+                var element = new TestElement(random.nextDouble());
+                assertThat(restored.add(element)).isEqualTo(original.add(element));
+            } else {
+                assertThat(restored.poll()).isEqualTo(original.poll());
+            }
+        }
+        while (!original.isEmpty()) {
+            assertThat(restored.poll()).isEqualTo(original.poll());
+        }
+        assertThat(restored.poll()).isNull();
+    }
+
+    @Test
+    void writesSnapshotsToFiles(@TempDir Path directory) throws IOException {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        for (int i = 0; i < 1000; i++) {
+            queue.add(new TestElement(i / 10.0));
+        }
+
+        var file = directory.resolve("queue.snapshot");
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            queue.writeSnapshot(channel, TestElement.CODEC);
+        }
+        HeadSortedQueue<TestElement> restored;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            restored = HeadSortedQueue.readSnapshot(channel, TestElement.CODEC);
+        }
+
+        assertThat(restored).containsExactlyElementsOf(queue);
+    }
+
+    @Test
+    void rejectsBrokenSnapshots() throws IOException {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        queue.add(new TestElement(5));
+        var bytes = new ByteArrayOutputStream();
+        queue.writeSnapshot(Channels.newChannel(bytes), TestElement.CODEC);
+        byte[] snapshot = bytes.toByteArray();
+
+        assertThatThrownBy(() -> HeadSortedQueue.readSnapshot(Channels.newChannel(new ByteArrayInputStream(new byte[16])), TestElement.CODEC))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> HeadSortedQueue.readSnapshot(
+                Channels.newChannel(new ByteArrayInputStream(Arrays.copyOf(snapshot, snapshot.length - 1))), TestElement.CODEC))
+                .isInstanceOf(EOFException.class);
+
+        //the snapshot ends with the head size, the bucket count, the bucket id, its size and one length prefixed element
+        for (int fromEnd : new int[]{28, 24, 16}) {
+            byte[] corrupt = snapshot.clone();
+            ByteBuffer.wrap(corrupt).putInt(corrupt.length - fromEnd, -1);
+            assertThatThrownBy(() -> HeadSortedQueue.readSnapshot(Channels.newChannel(new ByteArrayInputStream(corrupt)), TestElement.CODEC))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("negative");
+        }
+    }
+
+    @Test
+    void recordsStatisticsOnlyWhenEnabled() {
+        var queue = new HeadSortedQueue<TestElement>(1);
+        queue.add(new TestElement(0.5));
+        assertThat(queue.getStatistics()).isNull();
+
+        var statistics = queue.enableStatistics();
+        assertThat(queue.enableStatistics()).isSameAs(statistics);
+
+        queue.add(new TestElement(0.25));
+        for (int i = 0; i < 8; i++) {
+            queue.add(new TestElement(2 + i / 8.0));
+        }
+        queue.addAll(List.of(new TestElement(0.75), new TestElement(5), new TestElement(6)));
+
+        assertThat(statistics.getHeadInserts()).isEqualTo(2);
+        assertThat(statistics.getTailInserts()).isEqualTo(10);
+        assertThat(statistics.getHeadInsertRatio()).isEqualTo(2 / 12.0);
+        assertThat(statistics.getHeadSize()).isEqualTo(3);
+        assertThat(statistics.getBucketCount()).isEqualTo(3);
+        //bucket 2 holds 8 elements, buckets 5 and 6 one each
+        assertThat(statistics.getBucketSizeHistogram()).containsExactly(0, 2, 0, 0, 1);
+
+        for (int i = 0; i < 4; i++) {
+            queue.poll();
+        }
+        assertThat(statistics.getPromotions()).isEqualTo(1);
+        assertThat(statistics.getPromotedElements()).isEqualTo(8);
+        assertThat(statistics.getRefillNanosHistogram()).containsOnlyOnce(1);
+        assertThat(statistics.getBucketCount()).isEqualTo(2);
+
+        var snapshot = statistics.snapshot();
+        queue.add(new TestElement(9));
+        assertThat(snapshot.bucketCount()).isEqualTo(2);
+        assertThat(snapshot.bucketSizeHistogram()).containsExactly(0, 2);
+        assertThat(snapshot.headSize()).isEqualTo(statistics.getHeadSize());
+        assertThat(snapshot.headInsertRatio()).isEqualTo(2 / 12.0);
+
+        statistics.reset();
+        assertThat(statistics.getPromotions()).isZero();
+        assertThat(statistics.getHeadInsertRatio()).isNaN();
+    }
+
     @Test
     void doesCheckContainCorrectly() {
         var queue = new HeadSortedQueue<TestElement>(1);
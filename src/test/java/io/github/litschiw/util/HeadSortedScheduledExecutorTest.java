@@ -0,0 +1,166 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HeadSortedScheduledExecutorTest {
+
+    @RepeatedTest(5)
+    void runsTasksNotBeforeTheirDelay() throws Exception {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var scheduler = new HeadSortedScheduledExecutor(1, TimeUnit.MILLISECONDS);
+        try {
+            var futures = new ArrayList<ScheduledFuture<Long>>();
+            var delays = new ArrayList<Long>();
+            for (int i = 0; i < 500; i++) {
+                long delay = random.nextInt(200_000_000);
+                long scheduled = System.nanoTime();
+                delays.add(delay);
+                futures.add(scheduler.schedule(() -> System.nanoTime() - scheduled, delay, TimeUnit.NANOSECONDS));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(10, TimeUnit.SECONDS)).isGreaterThanOrEqualTo(delays.get(i));
+            }
+            assertThat(scheduler.getPendingTaskCount()).isZero();
+        } finally {
+            scheduler.shutdown();
+            assertThat(scheduler.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void removesCancelledTasks() throws Exception {
+        var scheduler = new HeadSortedScheduledExecutor(1, TimeUnit.MILLISECONDS);
+        var runs = new AtomicInteger();
+
+        var futures = new ArrayList<ScheduledFuture<?>>();
+        for (int i = 0; i < 100000; i++) {
+            futures.add(scheduler.schedule(runs::incrementAndGet, 1000 + i % 5000, TimeUnit.SECONDS));
+        }
+        assertThat(scheduler.getPendingTaskCount()).isEqualTo(100000);
+
+        for (var future : futures) {
+            assertThat(future.cancel(false)).isTrue();
+        }
+        assertThat(scheduler.getPendingTaskCount()).isZero();
+        assertThat(futures.get(0).isCancelled()).isTrue();
+
+        //nothing is pending, so the timer stops right away instead of waiting for the cancelled deadlines
+        scheduler.shutdown();
+        assertThat(scheduler.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(runs).hasValue(0);
+    }
+
+    @Test
+    void runsPeriodicTasksUntilCancelled() throws Exception {
+        var scheduler = new HeadSortedScheduledExecutor(1, TimeUnit.MILLISECONDS);
+        try {
+            var fixedRate = new CountDownLatch(5);
+            var fixedDelay = new CountDownLatch(5);
+            var rateFuture = scheduler.scheduleAtFixedRate(fixedRate::countDown, 0, 5, TimeUnit.MILLISECONDS);
+            var delayFuture = scheduler.scheduleWithFixedDelay(fixedDelay::countDown, 0, 5, TimeUnit.MILLISECONDS);
+
+            assertThat(fixedRate.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(fixedDelay.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(((RunnableScheduledFuture<?>) rateFuture).isPeriodic()).isTrue();
+
+            assertThat(rateFuture.cancel(false)).isTrue();
+            assertThat(delayFuture.cancel(false)).isTrue();
+            assertThat(rateFuture.isDone()).isTrue();
+        } finally {
+            scheduler.shutdown();
+            assertThat(scheduler.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void dispatchesToTheExecutor() throws Exception {
+        var pool = Executors.newFixedThreadPool(2, runnable -> new Thread(runnable, "worker"));
+        var scheduler = new HeadSortedScheduledExecutor(1, TimeUnit.MILLISECONDS, pool);
+        try {
+            assertThat(scheduler.submit(() -> Thread.currentThread().getName()).get(10, TimeUnit.SECONDS)).isEqualTo("worker");
+
+            var failing = scheduler.schedule(() -> {
+                throw new IllegalStateException("failed");
+            }, 1, TimeUnit.MILLISECONDS);
+            assertThatThrownBy(() -> failing.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        } finally {
+            scheduler.shutdown();
+            assertThat(scheduler.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void ordersDeadlinesBeyondTheIntTickRange() throws Exception {
+        //with a 1ns tick the deadlines lie beyond 2^31 ticks right away
+        var scheduler = new HeadSortedScheduledExecutor(1, TimeUnit.NANOSECONDS, Runnable::run);
+        try {
+            var order = new ConcurrentLinkedQueue<String>();
+            var late = scheduler.schedule(() -> order.add("late"), 2400, TimeUnit.MILLISECONDS);
+            //the late task is already in the head, the earlier one has to be found nevertheless
+            var early = scheduler.schedule(() -> order.add("early"), 2200, TimeUnit.MILLISECONDS);
+
+            late.get(10, TimeUnit.SECONDS);
+            assertThat(early.isDone()).isTrue();
+            assertThat(order).containsExactly("early", "late");
+        } finally {
+            scheduler.shutdown();
+            assertThat(scheduler.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void shutdownRunsDelayedButCancelsPeriodicTasks() throws Exception {
+        var scheduler = new HeadSortedScheduledExecutor(1, TimeUnit.MILLISECONDS);
+        var delayed = scheduler.schedule(() -> "done", 20, TimeUnit.MILLISECONDS);
+        var periodic = scheduler.scheduleAtFixedRate(() -> {
+        }, 1, 1, TimeUnit.HOURS);
+
+        scheduler.shutdown();
+        assertThat(scheduler.isShutdown()).isTrue();
+        assertThat(periodic.isCancelled()).isTrue();
+        assertThatThrownBy(() -> scheduler.execute(() -> {
+        })).isInstanceOf(RejectedExecutionException.class);
+
+        assertThat(scheduler.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(scheduler.isTerminated()).isTrue();
+        assertThat(delayed.get()).isEqualTo("done");
+    }
+
+    @Test
+    void shutdownNowReturnsPendingTasks() throws Exception {
+        var scheduler = new HeadSortedScheduledExecutor(1, TimeUnit.MILLISECONDS);
+        var first = scheduler.schedule(() -> {
+        }, 1, TimeUnit.HOURS);
+        var second = scheduler.schedule(() -> {
+        }, 2, TimeUnit.HOURS);
+
+        List<Runnable> pending = scheduler.shutdownNow();
+        assertThat(pending).containsExactlyInAnyOrder((Runnable) first, (Runnable) second);
+        assertThat(scheduler.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(first.isDone()).isFalse();
+    }
+
+    @Test
+    void needsAPositiveTick() {
+        assertThatThrownBy(() -> new HeadSortedScheduledExecutor(0, TimeUnit.MILLISECONDS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
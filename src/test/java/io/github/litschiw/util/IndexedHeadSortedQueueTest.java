@@ -0,0 +1,128 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IndexedHeadSortedQueueTest {
+
+    @RepeatedTest(20)
+    void pollsInSameOrderAsPriorityQueueWhileUpdatingPriorities() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new IndexedHeadSortedQueue<Integer>(0.05);
+        var reference = new PriorityQueue<IndexedHeadSortedQueue.Handle<Integer>>(Comparator.comparingDouble(Bucketable::priority));
+        var queued = new ArrayList<IndexedHeadSortedQueue.Handle<Integer>>();
+        double now = 0;
+
+        for (int i = 0; i < 100000; i++) {
+            double operation = random.nextDouble();
+            if (operation < 0.4 || queued.isEmpty()) {
+                var handle = queue.offer(i, now + random.nextDouble());
+                reference.add(handle);
+                queued.add(handle);
+            } else if (operation < 0.6) {
+                var polled = queue.poll();
+                var expected = reference.poll();
+                assertThat(polled.priority()).isEqualTo(expected.priority());
+                assertThat(polled.isQueued()).isFalse();
+                queued.remove(polled);
+                now = polled.priority();
+            } else if (operation < 0.7) {
+                var handle = queued.remove(random.nextInt(queued.size()));
+                assertThat(queue.remove(handle)).isTrue();
+                reference.remove(handle);
+            } else {
+                //the reference has to forget the handle before its priority changes
+                var handle = queued.get(random.nextInt(queued.size()));
+                reference.remove(handle);
+                queue.updatePriority(handle, now + random.nextDouble());
+                reference.add(handle);
+            }
+            assertThat(queue.size()).isEqualTo(reference.size());
+            if (!reference.isEmpty()) {
+                assertThat(queue.peek().priority()).isEqualTo(reference.peek().priority());
+            }
+        }
+
+        while (!reference.isEmpty()) {
+            assertThat(queue.poll().priority()).isEqualTo(reference.poll().priority());
+        }
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    void movesHandlesBetweenHeadAndTail() {
+        var queue = new IndexedHeadSortedQueue<String>(1);
+        var a = queue.offer("a", 0.5);
+        var b = queue.offer("b", 5);
+        var c = queue.offer("c", 0.7);
+
+        queue.updatePriority(a, 10);
+        queue.updatePriority(b, 0.1);
+
+        assertThat(queue.poll()).isSameAs(b);
+        assertThat(queue.poll()).isSameAs(c);
+        assertThat(queue.poll()).isSameAs(a);
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    void reoffersPolledHandles() {
+        var queue = new IndexedHeadSortedQueue<String>(1);
+        var handle = queue.offer("a", 3);
+
+        assertThat(queue.poll()).isSameAs(handle);
+        assertThat(queue.contains(handle)).isFalse();
+        assertThat(queue.remove(handle)).isFalse();
+
+        assertThat(queue.offer(handle)).isTrue();
+        assertThat(queue).containsExactly(handle);
+    }
+
+    @Test
+    void ordersPrioritiesBeyondTheIntBucketRange() {
+        var queue = new IndexedHeadSortedQueue<String>(1);
+        queue.offer("a", 3e9);
+        queue.offer("c", 5e9);
+        assertThat(queue.poll().element()).isEqualTo("a");
+
+        queue.offer("b", 4e9);
+        assertThat(queue.poll().element()).isEqualTo("b");
+        assertThat(queue.poll().element()).isEqualTo("c");
+    }
+
+    @Test
+    void rejectsForeignHandles() {
+        var queue = new IndexedHeadSortedQueue<String>(1);
+        var other = new IndexedHeadSortedQueue<String>(1);
+        var handle = other.offer("a", 1);
+
+        assertThatThrownBy(() -> queue.offer(handle)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> queue.updatePriority(handle, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(queue.remove(handle)).isFalse();
+        assertThat(queue.contains(handle)).isFalse();
+    }
+
+    @Test
+    void clearReleasesHandles() {
+        var queue = new IndexedHeadSortedQueue<String>(1);
+        var head = queue.offer("a", 0.5);
+        var tail = queue.offer("b", 7);
+
+        queue.clear();
+
+        assertThat(queue).isEmpty();
+        assertThat(head.isQueued()).isFalse();
+        assertThat(tail.isQueued()).isFalse();
+        assertThat(queue.offer(tail)).isTrue();
+        assertThat(queue.poll()).isSameAs(tail);
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LadderHeadSortedQueueTest {
+
+    // random sign and magnitude between 1e-300 and 1e300
+    private static double widePriority(Random random) {
+        double magnitude = Math.pow(10, random.nextDouble(-300, 300));
+        return random.nextBoolean() ? magnitude : -magnitude;
+    }
+
+    @RepeatedTest(20)
+    void pollsInSameOrderAsPriorityQueue() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new LadderHeadSortedQueue<TestElement>(random.nextInt(1, 64));
+        var reference = new PriorityQueue<TestElement>();
+        double now = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < 100000; i++) {
+            double operation = random.nextDouble();
+            if (operation < 0.5) {
+                //mostly in the future, but also some below the last polled priority
+                double priority = random.nextDouble() < 0.5 ? widePriority(random) : Math.max(now, -1) + random.nextDouble() * 1000;
+                var element = new TestElement(priority);
+                assertThat(queue.add(element)).isEqualTo(reference.add(element));
+            } else if (operation < 0.9) {
+                var polled = queue.poll();
+                assertThat(polled).isEqualTo(reference.poll());
+                if (polled != null) {
+                    now = polled.priority();
+                }
+            } else {
+                var element = reference.isEmpty() || random.nextBoolean()
+                        ? new TestElement(widePriority(random))
+                        : reference.toArray(TestElement[]::new)[random.nextInt(reference.size())];
+                assertThat(queue.remove(element)).isEqualTo(reference.remove(element));
+            }
+            assertThat(queue.size()).isEqualTo(reference.size());
+            assertThat(queue.peek()).isEqualTo(reference.peek());
+        }
+    }
+
+    @RepeatedTest(20)
+    void sortsWideRangesCorrectly() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = new TestElement[random.nextInt(300000)];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = new TestElement(widePriority(random));
+        }
+        if (input.length > 1) {
+            //spans more than Double.MAX_VALUE
+            input[0] = new TestElement(-Double.MAX_VALUE);
+            input[1] = new TestElement(Double.MAX_VALUE);
+        }
+
+        var queue = new LadderHeadSortedQueue<TestElement>();
+        Collections.addAll(queue, input);
+
+        var sortedList = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            sortedList.add(queue.poll());
+        }
+        assertThat(sortedList).hasSize(input.length);
+        assertThat(sortedList).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @Test
+    void subdividesCrowdedBuckets() {
+        var queue = new LadderHeadSortedQueue<TestElement>(4);
+        //a dense cluster next to a few far off elements ends up in a single bucket of the first rung
+        for (int i = 0; i < 1000; i++) {
+            queue.add(new TestElement(i / 1000.0));
+        }
+        for (int i = 1; i <= 10; i++) {
+            queue.add(new TestElement(Math.pow(10, i * 20)));
+        }
+
+        assertThat(queue.poll()).isEqualTo(new TestElement(0));
+        assertThat(queue.getRungCount()).isGreaterThan(1);
+        assertThat(queue.contains(new TestElement(0.5))).isTrue();
+        assertThat(queue.contains(new TestElement(1e200))).isTrue();
+        assertThat(queue).hasSize(1009);
+    }
+
+    @Test
+    void keepsDuplicates() {
+        var queue = new LadderHeadSortedQueue<TestElement>();
+        queue.add(new TestElement(1));
+        queue.add(new TestElement(1));
+        queue.add(new TestElement(-1));
+
+        assertThat(queue.poll()).isEqualTo(new TestElement(-1));
+        assertThat(queue.remove(new TestElement(1))).isTrue();
+        assertThat(queue).containsExactly(new TestElement(1));
+    }
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThatThrownBy(() -> new LadderHeadSortedQueue<TestElement>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
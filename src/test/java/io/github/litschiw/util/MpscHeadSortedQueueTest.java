@@ -0,0 +1,95 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MpscHeadSortedQueueTest {
+
+    @RepeatedTest(10)
+    void consumerReceivesEveryElementOnce() throws Exception {
+        var queue = new MpscHeadSortedQueue<TestElement>(0.01, 0, 4);
+        int producers = 8;
+        int perProducer = 20000;
+
+        var start = new CountDownLatch(1);
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p;
+            var thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(new TestElement((i * producers + offset) / 1000.0));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        var polled = new ArrayList<TestElement>();
+        start.countDown();
+        while (polled.size() < producers * perProducer) {
+            var element = queue.poll();
+            if (element != null) {
+                polled.add(element);
+            }
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertThat(polled).doesNotHaveDuplicates();
+        assertThat(queue).isEmpty();
+    }
+
+    @RepeatedTest(10)
+    void pollsInOrderOnceProducersAreDone() throws Exception {
+        var queue = new MpscHeadSortedQueue<TestElement>(0.1);
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < 4; p++) {
+            var random = new Random(p);
+            var thread = new Thread(() -> random.doubles(50000, 0, 100).mapToObj(TestElement::new).forEach(queue::offer));
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertThat(queue).hasSize(200000);
+
+        var sortedList = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            sortedList.add(queue.poll());
+        }
+        assertThat(sortedList).hasSize(200000);
+        assertThat(sortedList).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @Test
+    void seesBufferedElements() {
+        var queue = new MpscHeadSortedQueue<TestElement>(1);
+        queue.add(new TestElement(3));
+        queue.add(new TestElement(0.5));
+
+        assertThat(queue.contains(new TestElement(3))).isTrue();
+        assertThat(queue.peek()).isEqualTo(new TestElement(0.5));
+        assertThat(queue.remove(new TestElement(3))).isTrue();
+        assertThat(queue).containsExactly(new TestElement(0.5));
+    }
+
+    @Test
+    void cannotAddNull() {
+        var queue = new MpscHeadSortedQueue<TestElement>(1);
+        assertThatThrownBy(() -> queue.add(null)).isInstanceOf(NullPointerException.class);
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultiHeadSortedQueueTest {
+
+    @RepeatedTest(20)
+    void singleShardPollsInSameOrderAsPriorityQueue() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new MultiHeadSortedQueue<TestElement>(0.05, -1, 1);
+        var reference = new PriorityQueue<TestElement>();
+        double now = 0;
+
+        for (int i = 0; i < 50000; i++) {
+            double operation = random.nextDouble();
+            if (operation < 0.5) {
+                var element = new TestElement(now + random.nextDouble() * 2 - 0.5);
+                assertThat(queue.offer(element)).isEqualTo(reference.add(element));
+            } else if (operation < 0.9) {
+                var polled = queue.poll();
+                assertThat(polled).isEqualTo(reference.poll());
+                if (polled != null) {
+                    now = polled.priority();
+                }
+            } else {
+                var element = new TestElement(now + random.nextDouble());
+                assertThat(queue.remove(element)).isEqualTo(reference.remove(element));
+            }
+            assertThat(queue.size()).isEqualTo(reference.size());
+            assertThat(queue.peek()).isEqualTo(reference.peek());
+        }
+    }
+
+    @RepeatedTest(20)
+    void keepsTheRankErrorBounded() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        int shards = 8;
+        var queue = new MultiHeadSortedQueue<TestElement>(0.001, 0, shards);
+        double[] priorities = random.doubles(100000).distinct().sorted().toArray();
+        for (double priority : priorities) {
+            queue.add(new TestElement(priority));
+        }
+
+        //i elements were polled before, so at least (index - i) smaller elements are still queued
+        long totalError = 0;
+        for (int i = 0; i < priorities.length; i++) {
+            int index = Arrays.binarySearch(priorities, queue.poll().priority());
+            assertThat(index - i).isLessThan(20 * shards * 3);
+            totalError += Math.max(0, index - i);
+        }
+        assertThat((double) totalError / priorities.length).isLessThan(4 * shards);
+        assertThat(queue.poll()).isNull();
+    }
+
+    @RepeatedTest(10)
+    void concurrentProducersAndConsumersLoseNothing() throws Exception {
+        var queue = new MultiHeadSortedQueue<TestElement>(0.01, 0, 8);
+        int producers = 4;
+        int perProducer = 20000;
+
+        var pool = Executors.newFixedThreadPool(2 * producers);
+        var start = new CountDownLatch(1);
+        var producing = new ArrayList<Future<?>>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p;
+            producing.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(new TestElement((i * producers + offset) / 1000.0));
+                }
+                return null;
+            }));
+        }
+
+        var consumed = new ConcurrentLinkedQueue<TestElement>();
+        var consumedCount = new AtomicInteger();
+        var consuming = new ArrayList<Future<?>>();
+        for (int c = 0; c < producers; c++) {
+            consuming.add(pool.submit(() -> {
+                start.await();
+                while (consumedCount.get() < producers * perProducer) {
+                    var polled = queue.poll();
+                    if (polled != null) {
+                        consumed.add(polled);
+                        consumedCount.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (var future : producing) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        for (var future : consuming) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertThat(new HashSet<>(consumed)).hasSize(producers * perProducer);
+        assertThat(consumed).hasSize(producers * perProducer);
+        assertThat(queue).isEmpty();
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    void looksIntoEveryShard() {
+        var queue = new MultiHeadSortedQueue<TestElement>(1, 0, 4);
+        for (int i = 0; i < 100; i++) {
+            queue.add(new TestElement(i));
+        }
+
+        assertThat(queue).hasSize(100);
+        assertThat(queue.peek()).isEqualTo(new TestElement(0));
+        assertThat(queue.contains(new TestElement(42))).isTrue();
+        assertThat(queue.remove(new TestElement(42))).isTrue();
+        assertThat(queue.remove(new TestElement(42))).isFalse();
+        assertThat(queue.contains(new TestElement(42))).isFalse();
+
+        var iterator = queue.iterator();
+        assertThat(iterator.next()).isEqualTo(new TestElement(0));
+        iterator.remove();
+        assertThat(queue.peek()).isEqualTo(new TestElement(1));
+        assertThat(queue).hasSize(98);
+        assertThat(new ArrayList<>(queue)).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+
+        queue.clear();
+        assertThat(queue).isEmpty();
+        assertThat(queue.peek()).isNull();
+    }
+
+    @Test
+    void needsAtLeastOneShard() {
+        assertThatThrownBy(() -> new MultiHeadSortedQueue<TestElement>(1, 0, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffHeapHeadSortedQueueTest {
+
+    private record Event(double priority, String name) implements Bucketable {
+    }
+
+    private static final ElementCodec<Event> EVENT_CODEC = new ElementCodec<>() {
+        @Override
+        public int encodedSize(Event element) {
+            return Double.BYTES + Integer.BYTES + element.name().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        @Override
+        public void encode(Event element, ByteBuffer target) {
+            byte[] name = element.name().getBytes(StandardCharsets.UTF_8);
+            target.putDouble(element.priority()).putInt(name.length).put(name);
+        }
+
+        @Override
+        public Event decode(ByteBuffer source) {
+            double priority = source.getDouble();
+            byte[] name = new byte[source.getInt()];
+            source.get(name);
+            return new Event(priority, new String(name, StandardCharsets.UTF_8));
+        }
+    };
+
+    @RepeatedTest(20)
+    void pollsInSameOrderAsPriorityQueue() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new OffHeapHeadSortedQueue<>(0.01, TestElement.CODEC);
+        var reference = new PriorityQueue<TestElement>();
+        //removal candidates, polled elements stay in here and removing them has to fail as well
+        var added = new ArrayList<TestElement>();
+
+        for (int i = 0; i < 100000; i++) {
+            double operation = random.nextDouble();
+            if (operation < 0.5) {
+                var element = new TestElement(random.nextDouble());
+                assertThat(queue.add(element)).isEqualTo(reference.add(element));
+                added.add(element);
+            } else if (operation < 0.8) {
+                assertThat(queue.poll()).isEqualTo(reference.poll());
+            } else {
+                var element = added.isEmpty() || random.nextBoolean()
+                        ? new TestElement(random.nextDouble())
+                        : swapRemove(added, random.nextInt(added.size()));
+                assertThat(queue.remove(element)).isEqualTo(reference.remove(element));
+            }
+            assertThat(queue.size()).isEqualTo(reference.size());
+            assertThat(queue.peek()).isEqualTo(reference.peek());
+        }
+    }
+
+    @RepeatedTest(20)
+    void roundTripsVariableLengthElements() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = new ArrayList<Event>();
+        for (int i = random.nextInt(50000); i > 0; i--) {
+            input.add(new Event(random.nextDouble(0, 1000), "event-" + "x".repeat(random.nextInt(100)) + i));
+        }
+
+        var queue = new OffHeapHeadSortedQueue<>(10, EVENT_CODEC);
+        queue.addAll(input);
+
+        //removing every third element leaves gaps that the buckets reclaim once they grow
+        for (int i = 0; i < input.size(); i += 3) {
+            assertThat(queue.remove(input.get(i))).isTrue();
+        }
+        queue.addAll(input.subList(0, input.size() / 2));
+
+        var expected = new ArrayList<Event>();
+        for (int i = 0; i < input.size(); i++) {
+            if (i % 3 != 0) {
+                expected.add(input.get(i));
+            }
+        }
+        expected.addAll(input.subList(0, input.size() / 2));
+
+        //sorted lists compare in linear time, unlike the any order assertions
+        Comparator<Event> order = Comparator.comparingDouble(Event::priority).thenComparing(Event::name);
+        expected.sort(order);
+        var iterated = new ArrayList<>(queue);
+        iterated.sort(order);
+        assertThat(iterated).isEqualTo(expected);
+
+        var polled = new ArrayList<Event>(queue.size());
+        while (!queue.isEmpty()) {
+            polled.add(queue.poll());
+        }
+        assertThat(polled).isSortedAccordingTo(Comparator.comparingDouble(Event::priority));
+        polled.sort(order);
+        assertThat(polled).isEqualTo(expected);
+    }
+
+    private static <E> E swapRemove(List<E> list, int index) {
+        E removed = list.get(index);
+        list.set(index, list.get(list.size() - 1));
+        list.remove(list.size() - 1);
+        return removed;
+    }
+
+    @Test
+    void keepsTailOffHeap() {
+        var queue = new OffHeapHeadSortedQueue<>(1, TestElement.CODEC);
+        for (int i = 0; i < 10000; i++) {
+            queue.add(new TestElement(1 + i / 1000.0));
+        }
+
+        assertThat(queue.getOffHeapBytes()).isGreaterThanOrEqualTo(10000L * Double.BYTES);
+        assertThat(queue.contains(new TestElement(5.5))).isTrue();
+        assertThat(queue.removeIf(element -> element.priority() >= 5)).isTrue();
+        assertThat(queue).hasSize(4000);
+        assertThat(queue.peek()).isEqualTo(new TestElement(1));
+    }
+
+    @RepeatedTest(10)
+    void spillsFarBucketsAndReadsThemBack(@TempDir Path spillDirectory) throws Exception {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        long budget = 64 * 1024;
+        var queue = new OffHeapHeadSortedQueue<>(1, 0, TestElement.CODEC, spillDirectory, 2, budget);
+        var reference = new PriorityQueue<TestElement>();
+
+        for (int i = 0; i < 100000; i++) {
+            var element = new TestElement(random.nextDouble(0, 100));
+            queue.add(element);
+            reference.add(element);
+        }
+
+        assertThat(queue.getSpilledBucketCount()).isPositive();
+        assertThat(queue.getResidentBytes()).isLessThanOrEqualTo(budget);
+        try (var files = Files.list(spillDirectory)) {
+            assertThat(files).isEmpty(); // the mappings outlive their files
+        }
+
+        var queued = new ArrayList<>(reference);
+        for (int i = 0; i < 1000; i++) {
+            var element = swapRemove(queued, random.nextInt(queued.size()));
+            assertThat(queue.contains(element)).isTrue();
+            assertThat(queue.remove(element)).isEqualTo(reference.remove(element));
+        }
+
+        while (!reference.isEmpty()) {
+            assertThat(queue.poll()).isEqualTo(reference.poll());
+            if (random.nextInt(100) == 0) {
+                var element = new TestElement(random.nextDouble(0, 100));
+                queue.add(element);
+                reference.add(element);
+            }
+        }
+        assertThat(queue.poll()).isNull();
+        assertThat(queue.getResidentBytes()).isZero();
+    }
+
+    @Test
+    void rejectsCodecsWritingTheWrongSize() {
+        var queue = new OffHeapHeadSortedQueue<TestElement>(1, new ElementCodec<>() {
+            @Override
+            public int encodedSize(TestElement element) {
+                return 4;
+            }
+
+            @Override
+            public void encode(TestElement element, ByteBuffer target) {
+                target.putDouble(element.priority());
+            }
+
+            @Override
+            public TestElement decode(ByteBuffer source) {
+                return new TestElement(source.getDouble());
+            }
+        });
+
+        assertThatThrownBy(() -> queue.add(new TestElement(5))).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.litschiw.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PrimitiveHeadSortedQueueTest {
+
+    @RepeatedTest(20)
+    void sortsDoublesCorrectly() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(300000))
+                          .mapToObj(TestElement::new)
+                          .toArray(TestElement[]::new);
+
+        var queue = new PrimitiveHeadSortedQueue<TestElement>(0.1);
+        Collections.addAll(queue, input);
+
+        assertThat(queue.size()).isEqualTo(input.length);
+
+        var sortedList = new ArrayList<TestElement>(queue.size());
+        while (!queue.isEmpty()) {
+            sortedList.add(queue.poll());
+        }
+        assertThat(sortedList).hasSize(input.length);
+        assertThat(sortedList).isSortedAccordingTo(Comparator.comparingDouble(TestElement::priority));
+    }
+
+    @RepeatedTest(20)
+    void pollsInSameOrderAsPriorityQueueWithInterleavedOperations() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var queue = new PrimitiveHeadSortedQueue<TestElement>(0.05, -1, 10);
+        var reference = new PriorityQueue<TestElement>();
+        double now = 0;
+
+        for (int i = 0; i < 100000; i++) {
+            double operation = random.nextDouble();
+            if (operation < 0.5) {
+                var element = new TestElement(now + random.nextDouble() * 2 - 0.5);
+                queue.add(element);
+                reference.add(element);
+            } else if (operation < 0.9) {
+                var polled = queue.poll();
+                assertThat(polled).isEqualTo(reference.poll());
+                if (polled != null) {
+                    now = polled.priority();
+                }
+            } else {
+                var element = new TestElement(now + random.nextDouble());
+                assertThat(queue.remove(element)).isEqualTo(reference.remove(element));
+            }
+            assertThat(queue.size()).isEqualTo(reference.size());
+            assertThat(queue.peek()).isEqualTo(reference.peek());
+        }
+    }
+
+    @Test
+    void keepsDuplicates() {
+        var queue = new PrimitiveHeadSortedQueue<TestElement>(1);
+        queue.add(new TestElement(3));
+        queue.add(new TestElement(3));
+        queue.add(new TestElement(0.5));
+        queue.add(new TestElement(0.5));
+
+        assertThat(queue).hasSize(4);
+        assertThat(queue.remove(new TestElement(3))).isTrue();
+        assertThat(queue.contains(new TestElement(3))).isTrue();
+        assertThat(queue.poll()).isEqualTo(new TestElement(0.5));
+        assertThat(queue.poll()).isEqualTo(new TestElement(0.5));
+        assertThat(queue.poll()).isEqualTo(new TestElement(3));
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    void peeksIntoTailIfHeadIsEmpty() {
+        var queue = new PrimitiveHeadSortedQueue<TestElement>(1);
+        queue.add(new TestElement(5));
+        queue.add(new TestElement(7));
+
+        assertThat(queue.peek()).isEqualTo(new TestElement(5));
+        assertThat(queue.poll()).isEqualTo(new TestElement(5));
+        assertThat(queue.poll()).isEqualTo(new TestElement(7));
+    }
+
+    @Test
+    void doesCheckContainCorrectly() {
+        var queue = new PrimitiveHeadSortedQueue<TestElement>(1);
+        for (int i = 0; i < 10; i++) {
+            queue.add(new TestElement(i));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(queue.contains(new TestElement(i))).isTrue();
+        }
+
+        assertThat(queue.contains(new TestElement(10))).isFalse();
+        assertThat(queue.contains(new TestElement(-1))).isFalse();
+        assertThat(queue.contains(null)).isFalse();
+    }
+
+    @Test
+    void cannotAddNull() {
+        var queue = new PrimitiveHeadSortedQueue<TestElement>(1);
+        assertThatThrownBy(() -> queue.add(null)).isInstanceOf(NullPointerException.class);
+    }
+
+    @RepeatedTest(20)
+    void canRetainSome() {
+        var random = new Random();
+        var seed = random.nextLong();
+        System.out.println("Seed: " + seed);
+        random = new Random(seed);
+
+        var input = random.doubles(random.nextInt(300000))
+                          .mapToObj(TestElement::new)
+                          .toArray(TestElement[]::new);
+
+        var queue = new PrimitiveHeadSortedQueue<TestElement>(0.1);
+        Collections.addAll(queue, input);
+
+        var elementsToRetain = random.ints(1000, 0, input.length)
+                                     .mapToObj(i -> input[i])
+                                     .collect(Collectors.toSet());
+
+        queue.retainAll(elementsToRetain);
+
+        assertThat(queue).containsExactlyInAnyOrderElementsOf(elementsToRetain);
+        assertThat(queue.poll()).isEqualTo(Collections.min(elementsToRetain));
+    }
+
+    @Test
+    void canClear() {
+        var queue = new PrimitiveHeadSortedQueue<TestElement>(1);
+        new Random().doubles(100000).mapToObj(TestElement::new).forEach(queue::add);
+
+        queue.clear();
+
+        assertThat(queue).isEmpty();
+        assertThat(queue.poll()).isNull();
+        assertThat(queue.peek()).isNull();
+        assertThat(queue.iterator().hasNext()).isFalse();
+    }
+}
@@ -1,7 +1,26 @@
 package io.github.litschiw.util;
 
+import java.nio.ByteBuffer;
+
 public record TestElement(double priority) implements Bucketable, Comparable<TestElement> {
 
+    public static final ElementCodec<TestElement> CODEC = new ElementCodec<>() {
+        @Override
+        public int encodedSize(TestElement element) {
+            return Double.BYTES;
+        }
+
+        @Override
+        public void encode(TestElement element, ByteBuffer target) {
+            target.putDouble(element.priority());
+        }
+
+        @Override
+        public TestElement decode(ByteBuffer source) {
+            return new TestElement(source.getDouble());
+        }
+    };
+
     @Override
     public int compareTo(TestElement o) {
         return Double.compare(priority, o.priority);